@@ -0,0 +1,90 @@
+package org.example.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.example.helper.GCEHelper;
+import org.example.helper.HealthEncoder;
+import org.example.helper.LabelSet;
+import org.example.helper.OutputFormat;
+import org.example.helper.SampleBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Serialization throughput of each InstanceHealth encoding for one region snapshot. Output is
+// counted and discarded, so only encoding (and compression) is measured.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncoderBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int instances;
+
+  @Param({"LEGACY", "CSV", "CSV_GZIP", "COLUMNAR", "COLUMNAR_GZIP"})
+  public OutputFormat format;
+
+  private final List<String> columns = GCEHelper.metricColumns();
+  private SampleBatch batch;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    FakeFleet fleet = FakeFleet.of(instances);
+    int[] columnIds = SampleBatch.columns(columns);
+    long now = System.currentTimeMillis();
+    batch = SampleBatch.acquire();
+    for (String zone : fleet.zones()) {
+      for (int index : fleet.instancesIn(zone)) {
+        LabelSet labels = LabelSet.of("instance", fleet.instanceName(index), "zone", zone,
+            "status", "RUNNING");
+        for (int i = 0; i < columnIds.length; i++) {
+          batch.add(labels, columnIds[i], now, fleet.value(index, columns.get(i)));
+        }
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    SampleBatch.release(batch);
+  }
+
+  @Benchmark
+  public long encode() throws IOException {
+    CountingOutputStream out = new CountingOutputStream();
+    HealthEncoder encoder = format.newEncoder(out, columns);
+    encoder.accept(batch);
+    encoder.finish();
+    return out.bytes;
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+
+    private long bytes;
+
+    @Override
+    public void write(int b) {
+      bytes++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+      bytes += length;
+    }
+  }
+}
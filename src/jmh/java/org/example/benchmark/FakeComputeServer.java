@@ -0,0 +1,87 @@
+package org.example.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+// Compute Engine REST fake serving regions.get, paged instances.list and paged
+// instances.aggregatedList for a FakeFleet. Field masks are ignored.
+public class FakeComputeServer extends FakeHttpServer {
+
+  private final FakeFleet fleet;
+
+  public FakeComputeServer(FakeFleet fleet, long latencyMillis) throws IOException {
+    super(latencyMillis);
+    this.fleet = fleet;
+  }
+
+  @Override
+  protected String respond(String path, Map<String, String> query) {
+    String[] parts = path.split("/");
+    // /compute/v1/projects/{project}/regions/{region}
+    if (parts.length == 7 && parts[5].equals("regions")) {
+      StringBuilder json = new StringBuilder("{\"kind\":\"compute#region\",\"name\":\"")
+          .append(parts[6]).append("\",\"zones\":[");
+      for (int i = 0; i < fleet.zones().size(); i++) {
+        json.append(i > 0 ? "," : "").append("\"https://www.googleapis.com/compute/v1/projects/")
+            .append(fleet.projectId()).append("/zones/").append(fleet.zones().get(i))
+            .append('"');
+      }
+      return json.append("]}").toString();
+    }
+    // /compute/v1/projects/{project}/zones/{zone}/instances
+    if (parts.length == 8 && parts[5].equals("zones") && parts[7].equals("instances")) {
+      List<Integer> instances = fleet.instancesIn(parts[6]);
+      int offset = offset(query, "pageToken");
+      int end = Math.min(instances.size(), offset + pageSize(query, "maxResults", 500));
+      StringBuilder json = new StringBuilder("{\"kind\":\"compute#instanceList\",\"items\":[");
+      for (int i = offset; i < end; i++) {
+        appendInstance(json.append(i > offset ? "," : ""), instances.get(i), parts[6]);
+      }
+      json.append(']');
+      if (end < instances.size()) {
+        json.append(",\"nextPageToken\":\"").append(end).append('"');
+      }
+      return json.append('}').toString();
+    }
+    // /compute/v1/projects/{project}/aggregated/instances, paged across zones in zone order
+    if (parts.length == 7 && parts[5].equals("aggregated") && parts[6].equals("instances")) {
+      int offset = offset(query, "pageToken");
+      int end = Math.min(fleet.instances(), offset + pageSize(query, "maxResults", 500));
+      StringBuilder json = new StringBuilder(
+          "{\"kind\":\"compute#instanceAggregatedList\",\"items\":{");
+      int position = 0;
+      boolean firstZone = true;
+      for (String zone : fleet.zones()) {
+        List<Integer> instances = fleet.instancesIn(zone);
+        int from = Math.max(offset - position, 0);
+        int to = Math.min(end - position, instances.size());
+        position += instances.size();
+        if (from >= to) {
+          continue;
+        }
+        json.append(firstZone ? "" : ",").append("\"zones/").append(zone)
+            .append("\":{\"instances\":[");
+        firstZone = false;
+        for (int i = from; i < to; i++) {
+          appendInstance(json.append(i > from ? "," : ""), instances.get(i), zone);
+        }
+        json.append("]}");
+      }
+      json.append('}');
+      if (end < fleet.instances()) {
+        json.append(",\"nextPageToken\":\"").append(end).append('"');
+      }
+      return json.append('}').toString();
+    }
+    return null;
+  }
+
+  private void appendInstance(StringBuilder json, int index, String zone) {
+    json.append("{\"id\":\"").append(fleet.instanceId(index))
+        .append("\",\"name\":\"").append(fleet.instanceName(index))
+        .append("\",\"zone\":\"https://www.googleapis.com/compute/v1/projects/")
+        .append(fleet.projectId()).append("/zones/").append(zone)
+        .append("\",\"status\":\"RUNNING\",\"scheduling\":{\"preemptible\":true}}");
+  }
+}
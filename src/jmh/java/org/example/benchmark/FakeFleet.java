@@ -0,0 +1,44 @@
+package org.example.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Synthetic project served by the fake backends: instances spread round-robin over the region's
+// zones, and pods spread over ten namespaces and one node per thirty pods.
+public record FakeFleet(String projectId, String region, List<String> zones, int instances) {
+
+  public static FakeFleet of(int instances) {
+    return new FakeFleet("bench-project", "us-central1",
+        List.of("us-central1-a", "us-central1-b", "us-central1-c"), instances);
+  }
+
+  public List<Integer> instancesIn(String zone) {
+    int zoneIndex = zones.indexOf(zone);
+    List<Integer> indexes = new ArrayList<>();
+    for (int i = Math.max(zoneIndex, 0); zoneIndex >= 0 && i < instances; i += zones.size()) {
+      indexes.add(i);
+    }
+    return indexes;
+  }
+
+  public long instanceId(int index) {
+    return 1_000_000L + index;
+  }
+
+  public String instanceName(int index) {
+    return "vm-" + index;
+  }
+
+  public int nodes() {
+    return Math.max(1, instances / 30);
+  }
+
+  public String namespace(int pod) {
+    return "ns-" + pod % 10;
+  }
+
+  // Deterministic, varied metric value for an instance
+  public double value(int index, String metricType) {
+    return Math.abs((index * 31L + metricType.hashCode()) % 1000) / 10.0;
+  }
+}
@@ -0,0 +1,99 @@
+package org.example.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Loopback JSON server for the REST fakes. Subclasses map a request path and query to a JSON
+// body, or null for 404; every request is counted and delayed by the configured latency.
+public abstract class FakeHttpServer implements AutoCloseable {
+
+  private final long latencyMillis;
+  private final AtomicLong rpcs = new AtomicLong();
+  private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "fake-http");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final HttpServer server;
+
+  protected FakeHttpServer(long latencyMillis) throws IOException {
+    this.latencyMillis = latencyMillis;
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public String baseUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  public long rpcs() {
+    return rpcs.get();
+  }
+
+  protected abstract String respond(String path, Map<String, String> query);
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    rpcs.incrementAndGet();
+    try {
+      if (latencyMillis > 0) {
+        TimeUnit.MILLISECONDS.sleep(latencyMillis);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    String body = respond(exchange.getRequestURI().getPath(),
+        query(exchange.getRequestURI().getRawQuery()));
+    byte[] bytes = (body != null ? body : "{}").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(body != null ? 200 : 404, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static Map<String, String> query(String rawQuery) {
+    Map<String, String> query = new HashMap<>();
+    if (rawQuery == null) {
+      return query;
+    }
+    for (String pair : rawQuery.split("&")) {
+      int separator = pair.indexOf('=');
+      if (separator > 0) {
+        query.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+            URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return query;
+  }
+
+  // The fakes use the offset of the next item as their page token
+  protected static int offset(Map<String, String> query, String tokenParameter) {
+    String token = query.get(tokenParameter);
+    return token == null || token.isEmpty() ? 0 : Integer.parseInt(token);
+  }
+
+  protected static int pageSize(Map<String, String> query, String sizeParameter,
+      int defaultSize) {
+    String size = query.get(sizeParameter);
+    return size == null ? defaultSize : Integer.parseInt(size);
+  }
+}
@@ -0,0 +1,57 @@
+package org.example.benchmark;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Kubernetes API fake serving limit/continue-paged pod and node lists, one pod per fleet
+// instance
+public class FakeKubernetesServer extends FakeHttpServer {
+
+  private final FakeFleet fleet;
+
+  public FakeKubernetesServer(FakeFleet fleet, long latencyMillis) throws IOException {
+    super(latencyMillis);
+    this.fleet = fleet;
+  }
+
+  @Override
+  protected String respond(String path, Map<String, String> query) {
+    int offset = offset(query, "continue");
+    int limit = pageSize(query, "limit", Integer.MAX_VALUE);
+    if (path.equals("/api/v1/pods")) {
+      int end = (int) Math.min(fleet.instances(), (long) offset + limit);
+      StringBuilder json = list("PodList", end, fleet.instances());
+      for (int i = offset; i < end; i++) {
+        json.append(i > offset ? "," : "")
+            .append("{\"metadata\":{\"name\":\"pod-").append(i)
+            .append("\",\"namespace\":\"").append(fleet.namespace(i))
+            .append("\"},\"spec\":{\"containers\":[{\"name\":\"app\",\"resources\":")
+            .append("{\"requests\":{\"cpu\":\"250m\",\"memory\":\"512Mi\",")
+            .append("\"ephemeral-storage\":\"1Gi\"}}}]}}");
+      }
+      return json.append("]}").toString();
+    }
+    if (path.equals("/api/v1/nodes")) {
+      int end = (int) Math.min(fleet.nodes(), (long) offset + limit);
+      StringBuilder json = list("NodeList", end, fleet.nodes());
+      for (int i = offset; i < end; i++) {
+        json.append(i > offset ? "," : "")
+            .append("{\"metadata\":{\"name\":\"node-").append(i)
+            .append("\"},\"status\":{\"capacity\":{\"cpu\":\"8\",\"memory\":\"32Gi\",")
+            .append("\"ephemeral-storage\":\"100Gi\"},\"allocatable\":{\"cpu\":\"7910m\",")
+            .append("\"memory\":\"29Gi\",\"ephemeral-storage\":\"90Gi\"}}}");
+      }
+      return json.append("]}").toString();
+    }
+    return null;
+  }
+
+  private static StringBuilder list(String kind, int end, int total) {
+    StringBuilder json = new StringBuilder("{\"kind\":\"").append(kind)
+        .append("\",\"apiVersion\":\"v1\",\"metadata\":{");
+    if (end < total) {
+      json.append("\"continue\":\"").append(end).append('"');
+    }
+    return json.append("},\"items\":[");
+  }
+}
@@ -0,0 +1,130 @@
+package org.example.benchmark;
+
+import com.google.api.MetricDescriptor;
+import com.google.api.MonitoredResource;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.monitoring.v3.GetMetricDescriptorRequest;
+import com.google.monitoring.v3.ListTimeSeriesRequest;
+import com.google.monitoring.v3.ListTimeSeriesResponse;
+import com.google.monitoring.v3.MetricServiceGrpc;
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeInterval;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.monitoring.v3.TypedValue;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// In-process Cloud Monitoring fake. Descriptors are GAUGE/DOUBLE, or DELTA/INT64 for *_count
+// metrics; ListTimeSeries returns one aligned point per instance in the filtered zone, paged,
+// after the configured latency.
+public class FakeMonitoringServer extends MetricServiceGrpc.MetricServiceImplBase
+    implements AutoCloseable {
+
+  private static final Pattern ZONE = Pattern.compile("resource\\.labels\\.zone=\"([^\"]+)\"");
+  private static final int DEFAULT_PAGE_SIZE = 1000;
+
+  private final FakeFleet fleet;
+  private final long latencyMillis;
+  private final String name = "fake-monitoring-" + UUID.randomUUID();
+  private final AtomicLong rpcs = new AtomicLong();
+  private final Server server;
+
+  public FakeMonitoringServer(FakeFleet fleet, long latencyMillis) throws IOException {
+    this.fleet = fleet;
+    this.latencyMillis = latencyMillis;
+    this.server = InProcessServerBuilder.forName(name).addService(this).build().start();
+  }
+
+  public TransportChannelProvider transport() {
+    return FixedTransportChannelProvider.create(
+        GrpcTransportChannel.create(InProcessChannelBuilder.forName(name).build()));
+  }
+
+  public long rpcs() {
+    return rpcs.get();
+  }
+
+  @Override
+  public void getMetricDescriptor(GetMetricDescriptorRequest request,
+      StreamObserver<MetricDescriptor> response) {
+    rpcs.incrementAndGet();
+    String type = request.getName().substring(request.getName().indexOf("/metricDescriptors/")
+        + "/metricDescriptors/".length());
+    boolean counter = type.endsWith("_count");
+    response.onNext(MetricDescriptor.newBuilder()
+        .setName(request.getName())
+        .setType(type)
+        .setMetricKind(counter
+            ? MetricDescriptor.MetricKind.DELTA : MetricDescriptor.MetricKind.GAUGE)
+        .setValueType(counter
+            ? MetricDescriptor.ValueType.INT64 : MetricDescriptor.ValueType.DOUBLE)
+        .build());
+    response.onCompleted();
+  }
+
+  @Override
+  public void listTimeSeries(ListTimeSeriesRequest request,
+      StreamObserver<ListTimeSeriesResponse> response) {
+    rpcs.incrementAndGet();
+    sleep();
+    Matcher zoneMatcher = ZONE.matcher(request.getFilter());
+    String zone = zoneMatcher.find() ? zoneMatcher.group(1) : "";
+    String metricType = request.getFilter().substring(request.getFilter().indexOf('"') + 1,
+        request.getFilter().indexOf('"', request.getFilter().indexOf('"') + 1));
+    List<Integer> instances = fleet.instancesIn(zone);
+
+    int pageSize = request.getPageSize() > 0 ? request.getPageSize() : DEFAULT_PAGE_SIZE;
+    int offset = request.getPageToken().isEmpty() ? 0 : Integer.parseInt(request.getPageToken());
+    int end = Math.min(instances.size(), offset + pageSize);
+    TimeInterval interval = TimeInterval.newBuilder()
+        .setStartTime(request.getInterval().getEndTime())
+        .setEndTime(request.getInterval().getEndTime())
+        .build();
+
+    ListTimeSeriesResponse.Builder page = ListTimeSeriesResponse.newBuilder();
+    for (int index : instances.subList(offset, end)) {
+      page.addTimeSeries(TimeSeries.newBuilder()
+          .setMetric(com.google.api.Metric.newBuilder().setType(metricType))
+          .setResource(MonitoredResource.newBuilder()
+              .setType("gce_instance")
+              .putLabels("instance_id", String.valueOf(fleet.instanceId(index)))
+              .putLabels("zone", zone))
+          .addPoints(Point.newBuilder()
+              .setInterval(interval)
+              .setValue(TypedValue.newBuilder()
+                  .setDoubleValue(fleet.value(index, metricType)))));
+    }
+    if (end < instances.size()) {
+      page.setNextPageToken(String.valueOf(end));
+    }
+    response.onNext(page.build());
+    response.onCompleted();
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  private void sleep() {
+    if (latencyMillis <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.MILLISECONDS.sleep(latencyMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package org.example.benchmark;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.util.ClientBuilder;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.example.helper.ClientRegistry;
+import org.example.helper.CollectionEngine;
+import org.example.helper.GCEHelper;
+import org.example.helper.GKEHelper;
+import org.example.helper.InstanceInventory;
+import org.example.helper.RetryPolicy;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// End-to-end scrape latency against the local fakes: a full GCE region pass (zones, instance
+// lists, per-metric Monitoring queries) and a paged GKE pod + node listing. RPC counts per
+// scrape are reported as auxiliary counters.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScrapeBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int instances;
+
+  @Param({"0", "20"})
+  public long latencyMillis;
+
+  private FakeFleet fleet;
+  private FakeMonitoringServer monitoring;
+  private FakeComputeServer compute;
+  private FakeKubernetesServer kubernetes;
+  private ClientRegistry registry;
+  private CollectionEngine engine;
+  private ApiClient kubernetesClient;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    fleet = FakeFleet.of(instances);
+    monitoring = new FakeMonitoringServer(fleet, latencyMillis);
+    compute = new FakeComputeServer(fleet, latencyMillis);
+    kubernetes = new FakeKubernetesServer(fleet, latencyMillis);
+    kubernetesClient = new ClientBuilder().setBasePath(kubernetes.baseUrl()).build();
+    registry = new ClientRegistry(ClientRegistry.defaultChannelPoolSettings(),
+        new ClientRegistry.Overrides(monitoring.transport(), compute.baseUrl(),
+            NoCredentialsProvider.create(), kubernetesClient, null));
+    ClientRegistry.setShared(registry);
+    InstanceInventory.setShared(new InstanceInventory(Duration.ofHours(1)));
+    // Unthrottled, so the benchmark measures the pipeline rather than the rate limiter
+    engine = new CollectionEngine(new CollectionEngine.Limits(Map.of(),
+        Map.of(CollectionEngine.COMPUTE, 0.0, CollectionEngine.MONITORING, 0.0,
+            CollectionEngine.KUBERNETES, 0.0), Map.of()),
+        RetryPolicy.defaults());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    engine.close();
+    registry.close();
+    monitoring.close();
+    compute.close();
+    kubernetes.close();
+  }
+
+  @Benchmark
+  public void gceRegion(Blackhole blackhole, RpcCounters counters) throws IOException {
+    long monitoringBefore = monitoring.rpcs();
+    long computeBefore = compute.rpcs();
+    blackhole.consume(GCEHelper.fetchMetrics(fleet.projectId(), fleet.region(),
+        GCEHelper.Reduction.MAX, engine, batch -> blackhole.consume(batch.size())));
+    counters.monitoringRpcs += monitoring.rpcs() - monitoringBefore;
+    counters.computeRpcs += compute.rpcs() - computeBefore;
+  }
+
+  // Steady state is gceRegion with a warm inventory; this adds the aggregatedList pages
+  @Benchmark
+  public void gceRegionColdInventory(Blackhole blackhole, RpcCounters counters)
+      throws IOException {
+    InstanceInventory.shared().invalidate();
+    gceRegion(blackhole, counters);
+  }
+
+  @Benchmark
+  public void gkePagedListing(Blackhole blackhole, RpcCounters counters) throws IOException {
+    long before = kubernetes.rpcs();
+    GKEHelper.streamPodMetrics(kubernetesClient, Set.of(), 500, engine,
+        batch -> blackhole.consume(batch.size()));
+    GKEHelper.streamNodeMetrics(kubernetesClient, 500, engine,
+        batch -> blackhole.consume(batch.size()));
+    counters.kubernetesRpcs += kubernetes.rpcs() - before;
+  }
+
+  // Summed over each iteration; divide by the operation count for RPCs per scrape
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class RpcCounters {
+
+    public long monitoringRpcs;
+    public long computeRpcs;
+    public long kubernetesRpcs;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      monitoringRpcs = 0;
+      computeRpcs = 0;
+      kubernetesRpcs = 0;
+    }
+  }
+}
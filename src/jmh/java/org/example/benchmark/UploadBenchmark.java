@@ -0,0 +1,109 @@
+package org.example.benchmark;
+
+import com.google.cloud.storage.BucketInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.example.helper.ClientRegistry;
+import org.example.helper.CollectionEngine;
+import org.example.helper.GCEHelper;
+import org.example.helper.GCSHelper;
+import org.example.helper.GCSHelper.PublishMode;
+import org.example.helper.GCSRecordSink;
+import org.example.helper.HealthEncoder;
+import org.example.helper.LabelSet;
+import org.example.helper.OutputFormat;
+import org.example.helper.SampleBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Publishing one region snapshot to the in-memory GCS fake from google-cloud-nio: the one-shot
+// uploadToGCS path against the streaming sink used by Collector.collectGce
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadBenchmark {
+
+  private static final String BUCKET = "bench-bucket";
+
+  @Param({"100", "1000", "10000"})
+  public int instances;
+
+  private FakeFleet fleet;
+  private ClientRegistry registry;
+  private CollectionEngine engine;
+  private SampleBatch batch;
+  private String legacyText;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    fleet = FakeFleet.of(instances);
+    // getOptions() builds a fake that throws on any request option, and every publish path sets
+    // doesNotExist()/generationMatch(); this one ignores them instead
+    Storage storage = LocalStorageHelper.customOptions(false).getService();
+    storage.create(BucketInfo.of(BUCKET));
+    registry = new ClientRegistry(ClientRegistry.defaultChannelPoolSettings(),
+        new ClientRegistry.Overrides(null, null, null, null, storage));
+    ClientRegistry.setShared(registry);
+    engine = CollectionEngine.withDefaults();
+
+    int[] columnIds = SampleBatch.columns(GCEHelper.metricColumns());
+    long now = System.currentTimeMillis();
+    batch = SampleBatch.acquire();
+    StringBuilder text = new StringBuilder();
+    for (String zone : fleet.zones()) {
+      for (int index : fleet.instancesIn(zone)) {
+        LabelSet labels = LabelSet.of("instance", fleet.instanceName(index), "zone", zone,
+            "status", "RUNNING");
+        for (int i = 0; i < columnIds.length; i++) {
+          batch.add(labels, columnIds[i], now, i);
+        }
+      }
+    }
+    batch.appendText(text);
+    legacyText = text.toString();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    SampleBatch.release(batch);
+    engine.close();
+    registry.close();
+  }
+
+  @Benchmark
+  public void uploadToGcs() throws IOException {
+    GCSHelper.uploadToGCS(fleet.projectId(), fleet.region(), BUCKET, legacyText, engine);
+  }
+
+  @Benchmark
+  public long streamingSink() throws IOException {
+    OutputFormat format = OutputFormat.CSV;
+    GCSRecordSink sink = GCSHelper.openSink(fleet.projectId(), BUCKET,
+        "InstanceHealth" + format.extension(), format.contentType(),
+        GCSRecordSink.DEFAULT_CHUNK_SIZE, PublishMode.OVERWRITE, engine);
+    try {
+      HealthEncoder encoder = format.newEncoder(sink.stream(), GCEHelper.metricColumns());
+      encoder.accept(batch);
+      encoder.finish();
+    } finally {
+      sink.close();
+    }
+    return sink.bytes();
+  }
+}
@@ -0,0 +1,252 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.example.helper.CollectionEngine;
+import org.example.helper.DeltaTracker;
+import org.example.helper.FleetHelper;
+import org.example.helper.GCEHelper;
+import org.example.helper.GCSHelper;
+import org.example.helper.GCSHelper.PublishMode;
+import org.example.helper.GCSRecordSink;
+import org.example.helper.GKEHelper;
+import org.example.helper.GKEHelper.Listing;
+import org.example.helper.HealthEncoder;
+import org.example.helper.HealthScore;
+import org.example.helper.InstanceInventory;
+import org.example.helper.MetricDescriptorCache;
+import org.example.helper.MonitoringHelper;
+import org.example.helper.OutputFormat;
+import org.example.helper.SampleBatch;
+import org.example.helper.SampleSink;
+import org.example.helper.Spool;
+import org.example.helper.SpoolUploader;
+import org.example.helper.Telemetry;
+import org.example.helper.TimeSeriesStore;
+import org.example.helper.UtilizationHelper;
+import org.example.helper.Watermarks;
+
+// One collection pass per source. A Collector is meant to be reused across cycles so the
+// engine, shared clients and descriptor cache stay warm, and so the store accumulates history.
+public class Collector implements AutoCloseable {
+
+  private final CollectorConfig config;
+  private final CollectionEngine engine = CollectionEngine.withDefaults();
+  private final TimeSeriesStore store;
+  // Both null unless spooling is configured
+  private final Spool spool;
+  private final SpoolUploader spoolUploader;
+  // Null unless delta publishing is configured
+  private final DeltaTracker deltaTracker;
+
+  public Collector(CollectorConfig config) throws IOException {
+    this.config = config;
+    this.store = new TimeSeriesStore(config.storeMaxSeries(), config.storeWindowSamples(),
+        config.storeEwmaTimeConstant());
+    MetricDescriptorCache.shared().load(config.descriptorCacheFile());
+    Watermarks.shared().load(config.watermarkFile());
+    InstanceInventory.setShared(new InstanceInventory(config.gceInventoryRefresh()));
+    if (config.spoolDirectory() != null) {
+      spool = new Spool(config.spoolDirectory(), config.spoolSegmentBytes(),
+          config.spoolMaxSegments());
+      spoolUploader = new SpoolUploader(spool, config.projectId(), config.bucketName(),
+          config.uploadChunkSize(), config.publishMode(), engine);
+      spoolUploader.start();
+    } else {
+      spool = null;
+      spoolUploader = null;
+    }
+    // Each delta must be kept as its own object, which only PARTITIONED publishing does
+    if (config.deltaCompactionCycles() > 0 && config.publishMode() != PublishMode.PARTITIONED) {
+      System.err.println("Delta publishing needs the PARTITIONED publish mode, publishing full "
+          + "snapshots instead");
+      deltaTracker = null;
+    } else if (config.deltaCompactionCycles() > 0) {
+      deltaTracker = new DeltaTracker(gceColumns(), Set.of(HealthScore.COLUMN),
+          config.deltaThresholds(), config.deltaThreshold(), config.deltaAbsoluteThresholds(),
+          config.deltaCompactionCycles());
+    } else {
+      deltaTracker = null;
+    }
+  }
+
+  // Without a spool, records are encoded and uploaded as zones finish rather than after the
+  // whole region is collected. With one, the encoded object is appended to the spool and
+  // uploaded in the background, so a slow or failing upload never fails the cycle. With delta
+  // publishing, cycles between compactions publish "InstanceHealth-delta" objects holding only
+  // the rows that changed (see DeltaTracker).
+  public void collectGce() throws IOException {
+    OutputFormat format = config.outputFormat();
+    boolean delta = deltaTracker != null && !deltaTracker.isCompactionDue();
+    String objectName = (delta ? "InstanceHealth-delta" : "InstanceHealth") + format.extension();
+    if (spool != null) {
+      // The snapshot is buffered whole before it is appended, since encoding runs alongside the
+      // collection and the spool must stay free for the uploader meanwhile. The buffer is capped
+      // at what one spool record holds (just under spoolSegmentBytes, 64 MiB by default), so an
+      // oversized snapshot fails as soon as it passes the cap.
+      long collectedAt = System.currentTimeMillis();
+      CappedBuffer out = new CappedBuffer(spool.maxDataBytes(objectName, format.contentType()));
+      encodeGce(format, out, delta);
+      spool.append(new Spool.Record(objectName, format.contentType(), collectedAt,
+          out.toByteArray()));
+      spoolUploader.wake();
+    } else {
+      GCSRecordSink sink = GCSHelper.openSink(config.projectId(), config.bucketName(),
+          objectName, format.contentType(), config.uploadChunkSize(), config.publishMode(),
+          engine);
+      try {
+        encodeGce(format, sink.stream(), delta);
+      } catch (IOException | RuntimeException e) {
+        sink.abort();
+        throw e;
+      } finally {
+        sink.close();
+      }
+    }
+    if (deltaTracker != null) {
+      deltaTracker.commit();
+    }
+
+    MetricDescriptorCache.shared().save(config.descriptorCacheFile());
+    Watermarks.shared().save(config.watermarkFile());
+  }
+
+  public void collectGke() throws IOException {
+    Telemetry telemetry = Telemetry.shared();
+    try (Telemetry.Timer timer = telemetry.time("gke_pods")) {
+      if (config.gkeListing() == Listing.PAGED) {
+        GKEHelper.streamPodMetrics(config.gkeNamespaces(), config.gkePageSize(), engine,
+            batch -> System.out.print(batch.appendText(new StringBuilder())));
+      } else {
+        print(GKEHelper.fetchPodMetrics(config.gkeNamespaces()));
+      }
+    }
+    try (Telemetry.Timer timer = telemetry.time("gke_nodes")) {
+      print(GKEHelper.fetchNodeMetrics());
+    }
+    try (Telemetry.Timer timer = telemetry.time("gke_utilization")) {
+      print(UtilizationHelper.fetchUtilization(config.projectId(), config.clusterName(),
+          config.gkeNamespaces(), engine));
+    }
+  }
+
+  // Every running cluster in config.fleetLocations(), reached directly by endpoint
+  public void collectFleet() throws IOException {
+    FleetHelper.collect(config.projectId(), config.fleetLocations(), config.gkeNamespaces(),
+        config.gkePageSize(), config.fleetClusterTimeout(), engine,
+        batch -> System.out.print(batch.appendText(new StringBuilder())));
+  }
+
+  public void collectMonitoring() throws IOException {
+    MonitoringHelper.fetchClusterMetrics(config.projectId(), config.clusterName(), engine,
+        batch -> {
+          store.accept(batch);
+          System.out.print(batch.appendText(new StringBuilder()));
+        })
+        .report("Cluster monitoring metrics");
+    Watermarks.shared().save(config.watermarkFile());
+  }
+
+  // Recent samples of every GCE and Monitoring series collected so far
+  public TimeSeriesStore store() {
+    return store;
+  }
+
+  private void encodeGce(OutputFormat format, OutputStream out, boolean delta)
+      throws IOException {
+    List<String> columns = gceColumns();
+    if (delta) {
+      columns.add(DeltaTracker.CHANGE_COLUMN);
+    }
+    HealthEncoder encoder = format.newEncoder(out, columns);
+    SampleSink timedEncoder = batch -> {
+      try (Telemetry.Timer timer = Telemetry.shared().time("gce_encode")) {
+        encoder.accept(batch);
+      }
+    };
+    SampleSink published = deltaTracker == null ? timedEncoder
+        : delta ? deltaTracker.delta(timedEncoder) : deltaTracker.track(timedEncoder);
+    SampleSink recorded = config.gceHealthScore()
+        ? HealthScore.scoring(store, config.healthWindow(), published)
+        : batch -> {
+          store.accept(batch);
+          published.accept(batch);
+        };
+    GCEHelper.fetchMetrics(config.projectId(), config.region(), config.gceReduction(),
+        engine, recorded).report("GCE instance health");
+    if (delta) {
+      deltaTracker.finishDelta(timedEncoder);
+    }
+    encoder.finish();
+  }
+
+  private List<String> gceColumns() {
+    List<String> columns = new ArrayList<>(GCEHelper.metricColumns());
+    if (config.gceHealthScore()) {
+      columns.add(HealthScore.COLUMN);
+    }
+    return columns;
+  }
+
+  private static void print(SampleBatch batch) {
+    try {
+      System.out.print(batch.appendText(new StringBuilder()));
+    } finally {
+      SampleBatch.release(batch);
+    }
+  }
+
+  @Override
+  public void close() {
+    // The uploader's requests go through the engine, so it stops first
+    if (spool != null) {
+      spoolUploader.close();
+      spool.close();
+    }
+    engine.close();
+    try {
+      MetricDescriptorCache.shared().save(config.descriptorCacheFile());
+      Watermarks.shared().save(config.watermarkFile());
+    } catch (IOException e) {
+      System.err.println("Error saving collector state: " + e.getMessage());
+    }
+  }
+
+  // An in-memory buffer that refuses to grow past limit bytes
+  private static class CappedBuffer extends OutputStream {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final int limit;
+
+    CappedBuffer(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      ensureRoom(1);
+      bytes.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      ensureRoom(len);
+      bytes.write(b, off, len);
+    }
+
+    byte[] toByteArray() {
+      return bytes.toByteArray();
+    }
+
+    private void ensureRoom(int len) throws IOException {
+      if (bytes.size() + len > limit) {
+        throw new IOException("Snapshot is larger than the " + limit
+            + " bytes a spool record can hold; raise spoolSegmentBytes");
+      }
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package org.example;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.example.helper.GCEHelper.Reduction;
+import org.example.helper.GCSHelper.PublishMode;
+import org.example.helper.GCSRecordSink;
+import org.example.helper.GKEHelper.Listing;
+import org.example.helper.OutputFormat;
+
+// Collector settings, overridable with -Dcollector.<name>=<value> system properties. An interval
+// of zero disables that collection in daemon mode, and a metricsPort of zero disables the
+// collector's own /metrics endpoint. Without a spoolDirectory, GCE snapshots are uploaded
+// directly instead of through the local spool. A deltaCompactionCycles of zero publishes a full
+// GCE snapshot every cycle; otherwise only every that many cycles, with deltas in between. A delta
+// row counts as changed when a metric moves by more than both its absolute threshold
+// (deltaAbsoluteThresholds, defaulting to DeltaTracker.DEFAULT_ABSOLUTE_THRESHOLDS) and its
+// relative threshold (deltaThresholds, defaulting to deltaThreshold).
+public record CollectorConfig(
+    String projectId,
+    String region,
+    String bucketName,
+    String clusterName,
+    Path descriptorCacheFile,
+    Path watermarkFile,
+    int uploadChunkSize,
+    Path spoolDirectory,
+    int spoolSegmentBytes,
+    int spoolMaxSegments,
+    PublishMode publishMode,
+    OutputFormat outputFormat,
+    Reduction gceReduction,
+    Duration gceInventoryRefresh,
+    boolean gceHealthScore,
+    int deltaCompactionCycles,
+    double deltaThreshold,
+    Map<String, Double> deltaThresholds,
+    Map<String, Double> deltaAbsoluteThresholds,
+    Listing gkeListing,
+    Set<String> gkeNamespaces,
+    int gkePageSize,
+    List<String> fleetLocations,
+    Duration fleetClusterTimeout,
+    int storeMaxSeries,
+    int storeWindowSamples,
+    Duration storeEwmaTimeConstant,
+    Duration healthWindow,
+    Duration gceInterval,
+    Duration gkeInterval,
+    Duration monitoringInterval,
+    Duration fleetInterval,
+    int metricsPort) {
+
+  public static CollectorConfig fromSystemProperties() {
+    return new CollectorConfig(
+        property("projectId", "mohitshr-learning"),
+        property("region", "us-central1"),
+        property("bucketName", "mohitshr-project-gslb-us-central1"),
+        property("clusterName", "mohitshr-auto-cluster1"),
+        Path.of(property("descriptorCacheFile", "metric-descriptors.properties")),
+        Path.of(property("watermarkFile", "watermarks.properties")),
+        Integer.parseInt(property("uploadChunkSize",
+            String.valueOf(GCSRecordSink.DEFAULT_CHUNK_SIZE))),
+        optionalPath(property("spoolDirectory", "")),
+        Integer.parseInt(property("spoolSegmentBytes", String.valueOf(64 * 1024 * 1024))),
+        Integer.parseInt(property("spoolMaxSegments", "16")),
+        PublishMode.valueOf(property("publishMode", PublishMode.OVERWRITE.name())),
+        OutputFormat.valueOf(property("outputFormat", OutputFormat.LEGACY.name())),
+        Reduction.valueOf(property("gceReduction", Reduction.MAX.name())),
+        Duration.ofSeconds(Long.parseLong(property("gceInventoryRefreshSeconds", "600"))),
+        Boolean.parseBoolean(property("gceHealthScore", "false")),
+        Integer.parseInt(property("deltaCompactionCycles", "0")),
+        Double.parseDouble(property("deltaThreshold", "0.01")),
+        thresholds("deltaThresholds"),
+        thresholds("deltaAbsoluteThresholds"),
+        Listing.valueOf(property("gkeListing", Listing.CACHE.name())),
+        csv(property("gkeNamespaces", "default")),
+        Integer.parseInt(property("gkePageSize", "500")),
+        List.copyOf(csv(property("fleetLocations", ""))),
+        Duration.ofSeconds(Long.parseLong(property("fleetClusterTimeoutSeconds", "60"))),
+        Integer.parseInt(property("storeMaxSeries", "65536")),
+        Integer.parseInt(property("storeWindowSamples", "60")),
+        Duration.ofSeconds(Long.parseLong(property("storeEwmaSeconds", "300"))),
+        Duration.ofSeconds(Long.parseLong(property("healthWindowSeconds", "900"))),
+        Duration.ofSeconds(Long.parseLong(property("gceIntervalSeconds", "60"))),
+        Duration.ofSeconds(Long.parseLong(property("gkeIntervalSeconds", "60"))),
+        Duration.ofSeconds(Long.parseLong(property("monitoringIntervalSeconds", "300"))),
+        Duration.ofSeconds(Long.parseLong(property("fleetIntervalSeconds", "0"))),
+        Integer.parseInt(property("metricsPort", "0")));
+  }
+
+  // Comma-separated values, e.g. namespaces (empty selects all) or fleet locations
+  private static Set<String> csv(String value) {
+    return Arrays.stream(value.split(","))
+        .map(String::trim)
+        .filter(item -> !item.isEmpty())
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+  }
+
+  // Comma-separated metric=threshold pairs, e.g. "cpu/utilization=0.05"
+  private static Map<String, Double> thresholds(String name) {
+    Map<String, Double> thresholds = new LinkedHashMap<>();
+    for (String pair : csv(property(name, ""))) {
+      int separator = pair.lastIndexOf('=');
+      try {
+        if (separator <= 0) {
+          throw new IllegalArgumentException("missing metric name or '='");
+        }
+        thresholds.put(pair.substring(0, separator).trim(),
+            Double.parseDouble(pair.substring(separator + 1).trim()));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid collector." + name + " entry \"" + pair
+            + "\", expected metric=threshold", e);
+      }
+    }
+    return thresholds;
+  }
+
+  private static Path optionalPath(String value) {
+    return value.isEmpty() ? null : Path.of(value);
+  }
+
+  private static String property(String name, String defaultValue) {
+    return System.getProperty("collector." + name, defaultValue);
+  }
+}
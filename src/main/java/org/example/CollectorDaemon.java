@@ -0,0 +1,124 @@
+package org.example;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.example.helper.Telemetry;
+
+// Runs the GCE, GKE, Monitoring and fleet collections on independent fixed-rate schedules in one
+// long-lived process. A cycle that overruns its interval is never run concurrently with itself;
+// the ticks it missed are coalesced into a single run started as soon as it finishes.
+public class CollectorDaemon implements AutoCloseable {
+
+  private final CollectorConfig config;
+  private final Collector collector;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+      runnable -> new Thread(runnable, "collector-scheduler"));
+  private final ExecutorService workers = Executors.newCachedThreadPool(
+      runnable -> new Thread(runnable, "collector-cycle"));
+  private final CountDownLatch stopped = new CountDownLatch(1);
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  public CollectorDaemon(CollectorConfig config) throws IOException {
+    this.config = config;
+    this.collector = new Collector(config);
+  }
+
+  public void start() {
+    schedule("gce", config.gceInterval(), collector::collectGce);
+    schedule("gke", config.gkeInterval(), collector::collectGke);
+    schedule("monitoring", config.monitoringInterval(), collector::collectMonitoring);
+    schedule("fleet", config.fleetInterval(), collector::collectFleet);
+  }
+
+  public void awaitTermination() throws InterruptedException {
+    stopped.await();
+  }
+
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    scheduler.shutdownNow();
+    workers.shutdown();
+    try {
+      if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+        workers.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      workers.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    collector.close();
+    stopped.countDown();
+  }
+
+  private void schedule(String name, Duration interval, Cycle cycle) {
+    if (interval.isZero() || interval.isNegative()) {
+      System.out.println("Collection disabled: " + name);
+      return;
+    }
+    ScheduledCycle scheduled = new ScheduledCycle(name, cycle);
+    scheduler.scheduleAtFixedRate(scheduled::trigger, 0, interval.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  @FunctionalInterface
+  interface Cycle {
+
+    void run() throws Exception;
+  }
+
+  private class ScheduledCycle {
+
+    private final String name;
+    private final Cycle cycle;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    ScheduledCycle(String name, Cycle cycle) {
+      this.name = name;
+      this.cycle = cycle;
+    }
+
+    void trigger() {
+      if (!running.compareAndSet(false, true)) {
+        Telemetry.shared().count("collector_cycles_coalesced_total", "cycle", name);
+        if (!pending.getAndSet(true)) {
+          System.out.println("Collection cycle overran, coalescing next run: " + name);
+        }
+        return;
+      }
+      workers.execute(this::runUntilCaughtUp);
+    }
+
+    private void runUntilCaughtUp() {
+      do {
+        pending.set(false);
+        runOnce();
+        running.set(false);
+        // A tick may have arrived while the last run was finishing
+      } while (pending.get() && !closed.get() && running.compareAndSet(false, true));
+    }
+
+    private void runOnce() {
+      long start = System.nanoTime();
+      try (Telemetry.Timer timer = Telemetry.shared().time(name + "_cycle")) {
+        cycle.run();
+        Telemetry.shared().count("collector_cycles_total", "cycle", name, "outcome", "ok");
+        System.out.printf("Collection cycle %s finished in %d ms%n", name,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      } catch (Exception e) {
+        Telemetry.shared().count("collector_cycles_total", "cycle", name, "outcome", "error");
+        System.err.println("Error in collection cycle " + name + ": " + e.getMessage());
+        e.printStackTrace();
+      }
+    }
+  }
+}
@@ -1,23 +1,30 @@
 package org.example;
 
-import java.util.List;
-import java.util.StringJoiner;
-import org.example.helper.GCEHelper;
-import org.example.helper.GCSHelper;
+import org.example.helper.MetricsServer;
 
 public class Main {
 
   public static void main(String[] args) throws Exception {
-    String projectId = "mohitshr-learning";
-    String region = "us-central1";
-    String bucketName = "mohitshr-project-gslb-us-central1";
+    CollectorConfig config = CollectorConfig.fromSystemProperties();
+    if (config.metricsPort() > 0) {
+      MetricsServer metricsServer = new MetricsServer(config.metricsPort());
+      Runtime.getRuntime().addShutdownHook(new Thread(metricsServer::close, "metrics-shutdown"));
+    }
 
-    StringJoiner joiner = new StringJoiner("\n");
-    List<String> content = GCEHelper.fetchMetrics(projectId, region);
-    for (String c : content) {
-      joiner.add(c);
+    if (args.length > 0 && args[0].equals("--daemon")) {
+      CollectorDaemon daemon = new CollectorDaemon(config);
+      Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "collector-shutdown"));
+      daemon.start();
+      daemon.awaitTermination();
+      return;
     }
 
-    GCSHelper.uploadToGCS(projectId, region, bucketName, joiner.toString());
+    try (Collector collector = new Collector(config)) {
+      if (args.length > 0 && args[0].equals("--fleet")) {
+        collector.collectFleet();
+      } else {
+        collector.collectGce();
+      }
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,270 @@
+package org.example.helper;
+
+import com.google.api.gax.core.BackgroundResource;
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.grpc.ChannelPoolSettings;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.compute.v1.InstancesClient;
+import com.google.cloud.compute.v1.InstancesSettings;
+import com.google.cloud.compute.v1.RegionsClient;
+import com.google.cloud.compute.v1.RegionsSettings;
+import com.google.cloud.container.v1.ClusterManagerClient;
+import com.google.cloud.container.v1.ClusterManagerSettings;
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.cloud.monitoring.v3.MetricServiceSettings;
+import com.google.cloud.storage.BlobWriteSessionConfigs;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.util.ClientBuilder;
+import io.kubernetes.client.util.Config;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Long-lived API clients shared by all helpers. Each client (and its gRPC channel pool or HTTP
+// connection pool) is created on first use and reused across calls and collection cycles.
+public class ClientRegistry implements AutoCloseable {
+
+  private static ClientRegistry shared;
+
+  private final ChannelPoolSettings channelPoolSettings;
+  private final Overrides overrides;
+  // Keyed by "<project>/<chunk size>"
+  private final Map<String, Storage> storageClients = new ConcurrentHashMap<>();
+  private final Map<String, ApiClient> kubernetesByEndpoint = new ConcurrentHashMap<>();
+  private GoogleCredentials clusterCredentials;
+  private MetricServiceClient metricServiceClient;
+  private InstancesClient instancesClient;
+  private RegionsClient regionsClient;
+  private ClusterManagerClient clusterManagerClient;
+  private ApiClient kubernetesClient;
+  private boolean closed;
+
+  public ClientRegistry(ChannelPoolSettings channelPoolSettings) {
+    this(channelPoolSettings, Overrides.none());
+  }
+
+  public ClientRegistry(ChannelPoolSettings channelPoolSettings, Overrides overrides) {
+    this.channelPoolSettings = channelPoolSettings;
+    this.overrides = overrides;
+  }
+
+  public static synchronized ClientRegistry shared() {
+    if (shared == null) {
+      shared = new ClientRegistry(defaultChannelPoolSettings());
+      Runtime.getRuntime()
+          .addShutdownHook(new Thread(shared::close, "client-registry-shutdown"));
+    }
+    return shared;
+  }
+
+  // Replaces the registry every helper uses, e.g. with one pointed at local fakes. The previous
+  // registry is not closed.
+  public static synchronized void setShared(ClientRegistry registry) {
+    shared = registry;
+  }
+
+  // Start with a couple of warm channels and let gax grow the pool under concurrent fan-out
+  public static ChannelPoolSettings defaultChannelPoolSettings() {
+    return ChannelPoolSettings.builder()
+        .setInitialChannelCount(2)
+        .setMinChannelCount(2)
+        .setMaxChannelCount(8)
+        .setMinRpcsPerChannel(5)
+        .setMaxRpcsPerChannel(50)
+        .setPreemptiveRefreshEnabled(true)
+        .build();
+  }
+
+  public synchronized MetricServiceClient metricService() throws IOException {
+    checkOpen();
+    if (metricServiceClient == null) {
+      MetricServiceSettings.Builder settings = MetricServiceSettings.newBuilder()
+          .setTransportChannelProvider(MetricServiceSettings.defaultGrpcTransportProviderBuilder()
+              .setChannelPoolSettings(channelPoolSettings)
+              .build());
+      if (overrides.monitoringTransport() != null) {
+        settings.setTransportChannelProvider(overrides.monitoringTransport());
+      }
+      if (overrides.credentials() != null) {
+        settings.setCredentialsProvider(overrides.credentials());
+      }
+      metricServiceClient = MetricServiceClient.create(settings.build());
+    }
+    return metricServiceClient;
+  }
+
+  public synchronized InstancesClient instances() throws IOException {
+    checkOpen();
+    if (instancesClient == null) {
+      InstancesSettings.Builder settings = InstancesSettings.newBuilder();
+      if (overrides.computeEndpoint() != null) {
+        settings.setEndpoint(overrides.computeEndpoint());
+      }
+      if (overrides.credentials() != null) {
+        settings.setCredentialsProvider(overrides.credentials());
+      }
+      instancesClient = InstancesClient.create(settings.build());
+    }
+    return instancesClient;
+  }
+
+  public synchronized RegionsClient regions() throws IOException {
+    checkOpen();
+    if (regionsClient == null) {
+      RegionsSettings.Builder settings = RegionsSettings.newBuilder();
+      if (overrides.computeEndpoint() != null) {
+        settings.setEndpoint(overrides.computeEndpoint());
+      }
+      if (overrides.credentials() != null) {
+        settings.setCredentialsProvider(overrides.credentials());
+      }
+      regionsClient = RegionsClient.create(settings.build());
+    }
+    return regionsClient;
+  }
+
+  public synchronized ClusterManagerClient clusterManager() throws IOException {
+    checkOpen();
+    if (clusterManagerClient == null) {
+      clusterManagerClient = ClusterManagerClient.create(ClusterManagerSettings.newBuilder()
+          .setTransportChannelProvider(ClusterManagerSettings.defaultGrpcTransportProviderBuilder()
+              .setChannelPoolSettings(channelPoolSettings)
+              .build())
+          .build());
+    }
+    return clusterManagerClient;
+  }
+
+  public synchronized ApiClient kubernetes() throws IOException {
+    checkOpen();
+    if (kubernetesClient == null) {
+      kubernetesClient = overrides.kubernetes() != null
+          ? overrides.kubernetes() : Config.defaultClient();
+    }
+    return kubernetesClient;
+  }
+
+  // Client for a GKE control plane reached directly by endpoint, as in fleet mode. The cluster CA
+  // (base64 PEM, as returned by ClusterManager) pins TLS, and every request carries a fresh
+  // access token from one set of application default credentials shared by all clusters.
+  public synchronized ApiClient kubernetes(String endpoint, String caCertificate)
+      throws IOException {
+    checkOpen();
+    ApiClient client = kubernetesByEndpoint.get(endpoint);
+    if (client == null) {
+      GoogleCredentials credentials = clusterCredentials();
+      client = new ClientBuilder()
+          .setBasePath("https://" + endpoint)
+          .setCertificateAuthority(Base64.getDecoder().decode(caCertificate))
+          .setVerifyingSsl(true)
+          .build();
+      client.setHttpClient(client.getHttpClient().newBuilder()
+          .addInterceptor(chain -> {
+            credentials.refreshIfExpired();
+            return chain.proceed(chain.request().newBuilder()
+                .header("Authorization",
+                    "Bearer " + credentials.getAccessToken().getTokenValue())
+                .build());
+          })
+          .build());
+      kubernetesByEndpoint.put(endpoint, client);
+    }
+    return client;
+  }
+
+  public Storage storage(String projectId) {
+    return storage(projectId, GCSRecordSink.DEFAULT_CHUNK_SIZE);
+  }
+
+  // Write sessions take their chunk size from the client, so there is one client per chunk size
+  public synchronized Storage storage(String projectId, int chunkSize) {
+    checkOpen();
+    return storageClients.computeIfAbsent(projectId + "/" + chunkSize, key ->
+        overrides.storage() != null
+            ? overrides.storage()
+            : StorageOptions.newBuilder()
+                .setProjectId(projectId)
+                .setBlobWriteSessionConfig(
+                    BlobWriteSessionConfigs.getDefault().withChunkSize(chunkSize))
+                .build()
+                .getService());
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    shutdown(metricServiceClient);
+    shutdown(instancesClient);
+    shutdown(regionsClient);
+    shutdown(clusterManagerClient);
+    // An override is shared by every key
+    for (Storage storage : Set.copyOf(storageClients.values())) {
+      if (storage instanceof AutoCloseable closeable) {
+        try {
+          closeable.close();
+        } catch (Exception e) {
+          System.err.println("Error closing storage client: " + e.getMessage());
+        }
+      }
+    }
+    storageClients.clear();
+    if (kubernetesClient != null) {
+      shutdown(kubernetesClient);
+    }
+    kubernetesByEndpoint.values().forEach(ClientRegistry::shutdown);
+    kubernetesByEndpoint.clear();
+  }
+
+  private GoogleCredentials clusterCredentials() throws IOException {
+    if (clusterCredentials == null) {
+      clusterCredentials = GoogleCredentials.getApplicationDefault()
+          .createScoped("https://www.googleapis.com/auth/cloud-platform");
+    }
+    return clusterCredentials;
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("ClientRegistry is closed");
+    }
+  }
+
+  private static void shutdown(ApiClient client) {
+    client.getHttpClient().dispatcher().executorService().shutdown();
+    client.getHttpClient().connectionPool().evictAll();
+  }
+
+  private static void shutdown(BackgroundResource client) {
+    if (client == null) {
+      return;
+    }
+    client.shutdown();
+    try {
+      if (!client.awaitTermination(10, TimeUnit.SECONDS)) {
+        client.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      client.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Replacement transports and clients, e.g. for running against local fakes; null fields keep
+  // the production defaults. The compute endpoint applies to both instances and regions.
+  public record Overrides(TransportChannelProvider monitoringTransport, String computeEndpoint,
+      CredentialsProvider credentials, ApiClient kubernetes, Storage storage) {
+
+    public static Overrides none() {
+      return new Overrides(null, null, null, null, null);
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package org.example.helper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class CollectionEngine implements AutoCloseable {
+
+  public static final String COMPUTE = "compute";
+  public static final String MONITORING = "monitoring";
+  public static final String CONTAINER = "container";
+  public static final String KUBERNETES = "kubernetes";
+  public static final String STORAGE = "storage";
+  // Whole fleet cluster passes (see submitTask), which make their own KUBERNETES calls
+  public static final String FLEET = "fleet";
+
+  private final Limits limits;
+  private final RetryPolicy retryPolicy;
+  private final ExecutorService executor;
+  private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+  private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+  public CollectionEngine(Limits limits, RetryPolicy retryPolicy) {
+    this.limits = limits;
+    this.retryPolicy = retryPolicy;
+    this.executor = newExecutor();
+  }
+
+  public static CollectionEngine withDefaults() {
+    return new CollectionEngine(Limits.defaults(), RetryPolicy.defaults());
+  }
+
+  // Runs fn for every input concurrently and returns the results in input order
+  public <I, O> List<O> mapOrdered(List<I> inputs, Task<I, O> fn) throws IOException {
+    List<O> results = new ArrayList<>(inputs.size());
+    forEachOrdered(inputs, fn, results::add);
+    return results;
+  }
+
+  // Runs fn for every input concurrently and hands each result to the handler in input order as
+  // soon as it and all results before it are available. If a task or the handler fails, the
+  // tasks still running are cancelled rather than left spending quota.
+  public <I, O> void forEachOrdered(List<I> inputs, Task<I, O> fn, ResultHandler<O> handler)
+      throws IOException {
+    List<Future<O>> futures = new ArrayList<>(inputs.size());
+    boolean completed = false;
+    try {
+      for (I input : inputs) {
+        futures.add(executor.submit(() -> fn.apply(input)));
+      }
+      for (Future<O> future : futures) {
+        handler.accept(await(future));
+      }
+      completed = true;
+    } finally {
+      if (!completed) {
+        futures.forEach(future -> future.cancel(true));
+      }
+    }
+  }
+
+  public <T> Future<T> submit(String api, String method, Callable<T> task) {
+    return executor.submit(() -> call(api, method, task));
+  }
+
+  // Runs a task that makes (and retries) its own API calls, e.g. a whole cluster pass, holding
+  // one of the API's concurrency permits throughout. Unlike submit(), the task as a whole is not
+  // retried, so a failure is only retried at the call where it happened. Its duration is
+  // recorded under stage.
+  public <T> Future<T> submitTask(String api, String stage, Callable<T> task) {
+    Semaphore semaphore = permits(api);
+    return executor.submit(() -> {
+      semaphore.acquire();
+      try (Telemetry.Timer timer = Telemetry.shared().time(stage)) {
+        return task.call();
+      } finally {
+        semaphore.release();
+      }
+    });
+  }
+
+  // Runs a single API call within that API's concurrency and rate limits, retrying transient
+  // failures under the retry policy. The call as a whole, retries included, must finish within
+  // the policy deadline. Each attempt is recorded in Telemetry under api and method.
+  public <T> T call(String api, String method, Callable<T> call) throws Exception {
+    Semaphore semaphore = permits(api);
+    RateLimiter rateLimiter = rateLimiters.computeIfAbsent(api,
+        key -> new RateLimiter(limits.requestsPerSecondFor(key)));
+    Duration hedgeAfter = limits.hedgeAfterFor(api);
+    long start = System.nanoTime();
+    Telemetry telemetry = Telemetry.shared();
+    Callable<T> limited = () -> {
+      semaphore.acquire();
+      try {
+        rateLimiter.acquire();
+        long attemptStart = System.nanoTime();
+        boolean ok = false;
+        try {
+          T result = call.call();
+          ok = true;
+          return result;
+        } finally {
+          telemetry.recordRpc(api, method, System.nanoTime() - attemptStart, ok);
+        }
+      } finally {
+        semaphore.release();
+      }
+    };
+    return retryPolicy.run(api + "." + method,
+        () -> attempt(api, method, limited, rateLimiter, hedgeAfter, start));
+  }
+
+  // One attempt, bounded by what is left of the call deadline. When hedging is enabled for the
+  // API and the attempt is still running after hedgeAfter, an identical second request is sent
+  // and whichever succeeds first wins; the other is cancelled. Only idempotent reads go through
+  // hedged APIs.
+  private <T> T attempt(String api, String method, Callable<T> limited, RateLimiter rateLimiter,
+      Duration hedgeAfter, long start) throws Exception {
+    CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+    List<Future<T>> running = new ArrayList<>(2);
+    running.add(completion.submit(limited));
+    boolean hedged = hedgeAfter.isZero();
+    int pending = 1;
+    Exception failure = null;
+    try {
+      while (pending > 0) {
+        long remaining = retryPolicy.remainingNanos(start);
+        if (remaining <= 0) {
+          throw new TimeoutException("Call exceeded its " + retryPolicy.deadline() + " deadline");
+        }
+        Future<T> done = completion.poll(
+            hedged ? remaining : Math.min(remaining, hedgeAfter.toNanos()), TimeUnit.NANOSECONDS);
+        if (done == null) {
+          if (!hedged) {
+            Telemetry.shared().count("collector_rpc_hedges_total", "api", api, "method", method);
+            running.add(completion.submit(limited));
+            pending++;
+            hedged = true;
+          }
+          continue;
+        }
+        pending--;
+        try {
+          T result = done.get();
+          rateLimiter.onSuccess();
+          return result;
+        } catch (ExecutionException e) {
+          failure = e.getCause() instanceof Exception cause
+              ? cause : new ExecutionException(e.getCause());
+          if (RetryPolicy.isThrottled(failure)) {
+            Telemetry.shared().count("collector_rpc_throttled_total", "api", api);
+            rateLimiter.onThrottled();
+          }
+        }
+      }
+      throw failure;
+    } finally {
+      running.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private Semaphore permits(String api) {
+    return permits.computeIfAbsent(api, key -> new Semaphore(limits.concurrencyFor(key)));
+  }
+
+  public <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for collection task", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException ioException) {
+        throw ioException;
+      }
+      if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IOException("Collection task failed", cause);
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Prefers virtual threads when the runtime has them (Java 21+), otherwise a pool of daemon
+  // threads. Concurrency is bounded per API by the semaphores, not by the pool size, so nested
+  // fan-out (zones -> metrics) cannot deadlock on pool exhaustion.
+  private static ExecutorService newExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "collector-worker");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  @FunctionalInterface
+  public interface Task<I, O> {
+
+    O apply(I input) throws Exception;
+  }
+
+  @FunctionalInterface
+  public interface ResultHandler<O> {
+
+    void accept(O result) throws IOException;
+  }
+
+  public record Limits(Map<String, Integer> concurrency, Map<String, Double> requestsPerSecond,
+      Map<String, Duration> hedgeAfter) {
+
+    private static final int DEFAULT_CONCURRENCY = 8;
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 20.0;
+
+    public static Limits defaults() {
+      // Monitoring read quota is 6000 requests/minute per project. Kubernetes calls share one
+      // budget across every cluster's API server. Fleet passes hold a FLEET permit rather than a
+      // KUBERNETES one, so the calls inside a pass never wait on a permit the pass itself holds.
+      return new Limits(
+          Map.of(COMPUTE, 8, MONITORING, 16, CONTAINER, 8, KUBERNETES, 32, STORAGE, 8, FLEET, 16),
+          Map.of(COMPUTE, 20.0, MONITORING, 80.0, CONTAINER, 10.0, KUBERNETES, 50.0,
+              STORAGE, 20.0),
+          Map.of(MONITORING, Duration.ofSeconds(5)));
+    }
+
+    int concurrencyFor(String api) {
+      return concurrency.getOrDefault(api, DEFAULT_CONCURRENCY);
+    }
+
+    double requestsPerSecondFor(String api) {
+      return requestsPerSecond.getOrDefault(api, DEFAULT_REQUESTS_PER_SECOND);
+    }
+
+    // Zero (the default) disables hedging
+    Duration hedgeAfterFor(String api) {
+      return hedgeAfter.getOrDefault(api, Duration.ZERO);
+    }
+  }
+
+  // Token bucket refilled at an adaptive rate: halved whenever the API reports a quota error and
+  // raised back towards the configured rate by 5% of it per successful call. The bucket holds at
+  // most one second of tokens. A non-positive rate disables limiting.
+  static class RateLimiter {
+
+    private final double maxRate;
+    private final Ticker ticker;
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+
+    RateLimiter(double requestsPerSecond) {
+      this(requestsPerSecond, Ticker.SYSTEM);
+    }
+
+    RateLimiter(double requestsPerSecond, Ticker ticker) {
+      this.maxRate = requestsPerSecond;
+      this.ticker = ticker;
+      this.rate = requestsPerSecond;
+      this.tokens = requestsPerSecond;
+      this.lastRefillNanos = ticker.nanoTime();
+    }
+
+    void acquire() throws InterruptedException {
+      if (maxRate <= 0) {
+        return;
+      }
+      long waitNanos;
+      synchronized (this) {
+        refill();
+        // Take the token now, going into debt if needed, and wait until the debt is repaid
+        tokens -= 1;
+        waitNanos = tokens >= 0 ? 0 : (long) (-tokens / rate * 1_000_000_000L);
+      }
+      if (waitNanos > 0) {
+        ticker.sleep(waitNanos);
+      }
+    }
+
+    synchronized void onSuccess() {
+      if (maxRate > 0 && rate < maxRate) {
+        refill();
+        rate = Math.min(maxRate, rate + maxRate * 0.05);
+      }
+    }
+
+    synchronized void onThrottled() {
+      if (maxRate > 0) {
+        refill();
+        rate = Math.max(maxRate * 0.05, rate / 2);
+        tokens = Math.min(tokens, 0);
+      }
+    }
+
+    synchronized double rate() {
+      return rate;
+    }
+
+    private void refill() {
+      long now = ticker.nanoTime();
+      tokens = Math.min(rate, tokens + (now - lastRefillNanos) * rate / 1_000_000_000L);
+      lastRefillNanos = now;
+    }
+
+    // The time source, replaceable so tests can run on virtual time
+    interface Ticker {
+
+      Ticker SYSTEM = new Ticker() {
+        @Override
+        public long nanoTime() {
+          return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+          TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+      };
+
+      long nanoTime();
+
+      void sleep(long nanos) throws InterruptedException;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package org.example.helper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary layout, written in row groups of up to BLOCK_ROWS rows:
+//
+//   header:    "IHC1" magic, int column count, UTF column names
+//   row group: int row count (> 0)
+//              instance names as UTF strings
+//              zone and status columns as a UTF dictionary plus one short index per row
+//              each metric column as row count raw IEEE-754 doubles
+//   trailer:   int 0
+//
+// All integers and doubles are big-endian, as written by DataOutputStream.
+public class ColumnarHealthEncoder implements HealthEncoder {
+
+  public static final int MAGIC = 0x49484331; // "IHC1"
+  static final int BLOCK_ROWS = 4096;
+
+  private final DataOutputStream out;
+  private final int columnCount;
+  private final int[] columnIds;
+  private final String[] instances = new String[BLOCK_ROWS];
+  private final String[] zones = new String[BLOCK_ROWS];
+  private final String[] statuses = new String[BLOCK_ROWS];
+  private final double[][] values;
+  private int rows;
+
+  public ColumnarHealthEncoder(OutputStream out, List<String> columns) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    this.columnCount = columns.size();
+    this.columnIds = SampleBatch.columns(columns);
+    this.values = new double[columnCount][BLOCK_ROWS];
+    this.out.writeInt(MAGIC);
+    this.out.writeInt(columnCount);
+    for (String column : columns) {
+      this.out.writeUTF(column);
+    }
+  }
+
+  @Override
+  public void accept(SampleBatch batch) throws IOException {
+    batch.forEachRow(columnIds, this::writeRow);
+  }
+
+  private void writeRow(LabelSet labels, double[] row) throws IOException {
+    instances[rows] = labels.get("instance");
+    zones[rows] = labels.get("zone");
+    statuses[rows] = labels.get("status");
+    for (int column = 0; column < columnCount; column++) {
+      values[column][rows] = row[column];
+    }
+    if (++rows == BLOCK_ROWS) {
+      flushBlock();
+    }
+  }
+
+  @Override
+  public void finish() throws IOException {
+    flushBlock();
+    out.writeInt(0);
+    out.flush();
+  }
+
+  private void flushBlock() throws IOException {
+    if (rows == 0) {
+      return;
+    }
+    out.writeInt(rows);
+    for (int row = 0; row < rows; row++) {
+      out.writeUTF(instances[row]);
+    }
+    writeDictionaryColumn(zones);
+    writeDictionaryColumn(statuses);
+    for (double[] column : values) {
+      for (int row = 0; row < rows; row++) {
+        out.writeDouble(column[row]);
+      }
+    }
+    rows = 0;
+  }
+
+  private void writeDictionaryColumn(String[] column) throws IOException {
+    Map<String, Integer> indexes = new HashMap<>();
+    List<String> dictionary = new ArrayList<>();
+    short[] encoded = new short[rows];
+    for (int row = 0; row < rows; row++) {
+      encoded[row] = (short) (int) indexes.computeIfAbsent(column[row], value -> {
+        dictionary.add(value);
+        return dictionary.size() - 1;
+      });
+    }
+    out.writeInt(dictionary.size());
+    for (String value : dictionary) {
+      out.writeUTF(value);
+    }
+    for (short index : encoded) {
+      out.writeShort(index);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package org.example.helper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// RFC 4180 CSV with a header row: instance,zone,status,<metric columns...>
+public class CsvHealthEncoder implements HealthEncoder {
+
+  private final Writer writer;
+  private final int[] columnIds;
+
+  public CsvHealthEncoder(OutputStream out, List<String> columns) throws IOException {
+    this.columnIds = SampleBatch.columns(columns);
+    this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writer.write("instance,zone,status");
+    for (String column : columns) {
+      writer.write(',');
+      writeField(column);
+    }
+    writer.write("\r\n");
+  }
+
+  @Override
+  public void accept(SampleBatch batch) throws IOException {
+    batch.forEachRow(columnIds, this::writeRow);
+  }
+
+  private void writeRow(LabelSet labels, double[] values) throws IOException {
+    writeField(labels.get("instance"));
+    writer.write(',');
+    writeField(labels.get("zone"));
+    writer.write(',');
+    writeField(labels.get("status"));
+    for (double value : values) {
+      writer.write(',');
+      writer.write(Double.toString(value));
+    }
+    writer.write("\r\n");
+  }
+
+  @Override
+  public void finish() throws IOException {
+    writer.flush();
+  }
+
+  private void writeField(String field) throws IOException {
+    if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0
+        && field.indexOf('\r') < 0) {
+      writer.write(field);
+      return;
+    }
+    writer.write('"');
+    writer.write(field.replace("\"", "\"\""));
+    writer.write('"');
+  }
+}
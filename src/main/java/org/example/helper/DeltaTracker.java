@@ -0,0 +1,196 @@
+package org.example.helper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Change detection for delta publishing. Remembers the last published row of every instance and
+// passes on only rows that were added, changed or removed since, with a trailing "delta/change"
+// column (ADDED, CHANGED or REMOVED; removed rows repeat their last published values). A row
+// whose hash matches the published one is dropped without further work; otherwise it counts as
+// changed if its status changed or any metric moved by more than the larger of its relative
+// threshold (times the published value) and its absolute threshold. The absolute floor keeps
+// values near zero, e.g. the byte counters of an idle instance, from counting every wobble as a
+// change. Derived columns (e.g. the health score) are published but never make a row changed on
+// their own. Sub-threshold drift is measured against the published row, not the previous cycle,
+// so it cannot accumulate unseen.
+//
+// Every compactionInterval cycles (and on the first) a full snapshot is due instead; track()
+// then records every row as published. Nothing is remembered until commit(), which callers run
+// only once the object has been durably published; an uncommitted cycle is simply discarded by
+// the next one.
+public class DeltaTracker {
+
+  public static final String CHANGE_COLUMN = "delta/change";
+  public static final double ADDED = 1;
+  public static final double CHANGED = 2;
+  public static final double REMOVED = -1;
+
+  // Absolute thresholds in each metric's own unit: utilization is a 0-1 fraction, memory,
+  // network and disk counts are bytes, and I/O latency is microseconds. Other columns have none.
+  public static final Map<String, Double> DEFAULT_ABSOLUTE_THRESHOLDS = Map.of(
+      "cpu/utilization", 0.01,
+      "memory/balloon/ram_used", 16.0 * 1024 * 1024,
+      "network/received_bytes_count", 1024.0 * 1024,
+      "network/sent_bytes_count", 1024.0 * 1024,
+      "disk/average_io_latency", 1000.0,
+      "disk/read_bytes_count", 1024.0 * 1024,
+      "disk/write_bytes_count", 1024.0 * 1024);
+
+  private static final int CHANGE_METRIC = Symbols.intern(CHANGE_COLUMN);
+
+  private final int[] columnIds;
+  private final boolean[] derived;
+  private final double[] thresholds;
+  private final double[] absoluteThresholds;
+  private final int compactionInterval;
+  private Map<String, PublishedRow> published = new HashMap<>();
+  private Map<String, PublishedRow> pending;
+  private Set<String> seen;
+  private int cyclesSinceCompaction;
+  private boolean pendingFull;
+
+  // thresholds maps metric columns to their relative threshold; others use defaultThreshold.
+  // absoluteThresholds overrides DEFAULT_ABSOLUTE_THRESHOLDS per column.
+  public DeltaTracker(List<String> columns, Set<String> derivedColumns,
+      Map<String, Double> thresholds, double defaultThreshold,
+      Map<String, Double> absoluteThresholds, int compactionInterval) {
+    this.columnIds = SampleBatch.columns(columns);
+    this.derived = new boolean[columns.size()];
+    this.thresholds = new double[columns.size()];
+    this.absoluteThresholds = new double[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      String column = columns.get(i);
+      this.derived[i] = derivedColumns.contains(column);
+      this.thresholds[i] = thresholds.getOrDefault(column, defaultThreshold);
+      this.absoluteThresholds[i] = absoluteThresholds.getOrDefault(column,
+          DEFAULT_ABSOLUTE_THRESHOLDS.getOrDefault(column, 0.0));
+    }
+    this.compactionInterval = compactionInterval;
+  }
+
+  public boolean isCompactionDue() {
+    return published.isEmpty() || cyclesSinceCompaction + 1 >= compactionInterval;
+  }
+
+  // Full snapshot: every row is passed on unchanged and becomes the new published state
+  public SampleSink track(SampleSink downstream) {
+    pending = new HashMap<>();
+    pendingFull = true;
+    return batch -> {
+      batch.forEachRow(columnIds, (labels, values) -> {
+        double[] copy = values.clone();
+        pending.put(key(labels), new PublishedRow(labels, copy, hash(labels, copy)));
+      });
+      downstream.accept(batch);
+    };
+  }
+
+  // Delta: only added and changed rows are passed on; finishDelta adds the removed ones
+  public SampleSink delta(SampleSink downstream) {
+    pending = new HashMap<>(published);
+    pendingFull = false;
+    seen = new HashSet<>();
+    return batch -> {
+      SampleBatch changes = SampleBatch.acquire();
+      try {
+        long now = System.currentTimeMillis();
+        batch.forEachRow(columnIds, (labels, values) -> {
+          String key = key(labels);
+          seen.add(key);
+          PublishedRow previous = published.get(key);
+          long hash = hash(labels, values);
+          if (previous != null
+              && (previous.hash == hash || !isSignificant(previous, labels, values))) {
+            count("unchanged");
+            return;
+          }
+          double change = previous == null ? ADDED : CHANGED;
+          count(previous == null ? "added" : "changed");
+          double[] copy = values.clone();
+          pending.put(key, new PublishedRow(labels, copy, hash));
+          addRow(changes, labels, copy, change, now);
+        });
+        downstream.accept(changes);
+      } finally {
+        SampleBatch.release(changes);
+      }
+    };
+  }
+
+  // Emits every published row that did not appear in this cycle as REMOVED
+  public void finishDelta(SampleSink downstream) throws IOException {
+    SampleBatch removed = SampleBatch.acquire();
+    try {
+      long now = System.currentTimeMillis();
+      for (Map.Entry<String, PublishedRow> entry : published.entrySet()) {
+        if (!seen.contains(entry.getKey())) {
+          PublishedRow row = entry.getValue();
+          addRow(removed, row.labels, row.values, REMOVED, now);
+          pending.remove(entry.getKey());
+          count("removed");
+        }
+      }
+      downstream.accept(removed);
+    } finally {
+      SampleBatch.release(removed);
+    }
+  }
+
+  public void commit() {
+    published = pending;
+    pending = null;
+    seen = null;
+    cyclesSinceCompaction = pendingFull ? 0 : cyclesSinceCompaction + 1;
+  }
+
+  private boolean isSignificant(PublishedRow previous, LabelSet labels, double[] values) {
+    if (!previous.labels.equals(labels)) {
+      return true;
+    }
+    for (int i = 0; i < values.length; i++) {
+      double before = previous.values[i];
+      double after = values[i];
+      if (derived[i] || Double.doubleToLongBits(before) == Double.doubleToLongBits(after)) {
+        continue;
+      }
+      if (Double.isNaN(before) || Double.isNaN(after) || Math.abs(after - before)
+          > Math.max(absoluteThresholds[i], thresholds[i] * Math.abs(before))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addRow(SampleBatch batch, LabelSet labels, double[] values, double change,
+      long timestampMillis) {
+    for (int i = 0; i < columnIds.length; i++) {
+      batch.add(labels, columnIds[i], timestampMillis, values[i]);
+    }
+    batch.add(labels, CHANGE_METRIC, timestampMillis, change);
+  }
+
+  private static void count(String change) {
+    Telemetry.shared().count("collector_delta_rows_total", "change", change);
+  }
+
+  // Rows are identified by instance and zone; status is part of the row's content
+  private static String key(LabelSet labels) {
+    return labels.get("zone") + "/" + labels.get("instance");
+  }
+
+  private static long hash(LabelSet labels, double[] values) {
+    long hash = labels.hashCode();
+    for (double value : values) {
+      hash = hash * 31 + Double.doubleToLongBits(value);
+    }
+    return hash;
+  }
+
+  private record PublishedRow(LabelSet labels, double[] values, long hash) {
+
+  }
+}
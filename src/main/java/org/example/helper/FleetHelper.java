@@ -0,0 +1,183 @@
+package org.example.helper;
+
+import com.google.cloud.container.v1.ClusterManagerClient;
+import com.google.container.v1.Cluster;
+import io.kubernetes.client.openapi.ApiClient;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Collects pod requests and node capacity from every running GKE cluster in a set of locations.
+// Clusters are reached directly by endpoint (see ClientRegistry.kubernetes(endpoint, ca)) and
+// collected concurrently; each cluster's samples gain a "cluster" label. Every page is handed to
+// the sink as soon as it is listed and then released, so memory is bounded by the page size, not
+// the cluster size. A cluster that fails or does not finish within the timeout is reported and
+// skipped without holding up the others; pages it delivered before then are kept.
+public class FleetHelper {
+
+  public static List<ClusterTarget> listClusters(String projectId, List<String> locations,
+      CollectionEngine engine) throws IOException {
+    ClusterManagerClient client = ClientRegistry.shared().clusterManager();
+    List<List<Cluster>> clustersByLocation = engine.mapOrdered(locations,
+        location -> engine.call(CollectionEngine.CONTAINER, "listClusters",
+            () -> client.listClusters(String.format("projects/%s/locations/%s", projectId,
+                location)).getClustersList()));
+
+    List<ClusterTarget> targets = new ArrayList<>();
+    for (List<Cluster> clusters : clustersByLocation) {
+      for (Cluster cluster : clusters) {
+        if (cluster.getStatus() == Cluster.Status.RUNNING) {
+          targets.add(new ClusterTarget(cluster.getName(), cluster.getLocation(),
+              cluster.getEndpoint(), cluster.getMasterAuth().getClusterCaCertificate()));
+        }
+      }
+    }
+    return targets;
+  }
+
+  // Each cluster gets timeout from when its collection starts, so a slow cluster never eats
+  // into the budget of the ones after it. Pages from different clusters reach the sink one at a
+  // time, in whatever order they are listed.
+  public static List<ClusterResult> collect(String projectId, List<String> locations,
+      Set<String> namespaces, int pageSize, Duration timeout, CollectionEngine engine,
+      SampleSink sink) throws IOException {
+    List<ClusterTarget> targets = listClusters(projectId, locations, engine);
+
+    Object sinkLock = new Object();
+    List<ClusterTask> tasks = new ArrayList<>(targets.size());
+    for (ClusterTarget target : targets) {
+      ClusterTask task = new ClusterTask(target);
+      // Every page request inside is retried on its own, so the cluster as a whole is not
+      task.future = engine.submitTask(CollectionEngine.FLEET, "fleet_cluster", () -> {
+        task.started();
+        return collectCluster(target, namespaces, pageSize, engine, page -> {
+          synchronized (sinkLock) {
+            if (!task.abandoned) {
+              sink.accept(page);
+            }
+          }
+        });
+      });
+      tasks.add(task);
+    }
+
+    List<ClusterResult> results = new ArrayList<>(targets.size());
+    for (ClusterTask task : tasks) {
+      try {
+        results.add(new ClusterResult(task.target, task.await(timeout), null));
+      } catch (TimeoutException e) {
+        abandon(task, sinkLock);
+        results.add(ClusterResult.failed(task.target, "timed out after " + timeout));
+      } catch (ExecutionException e) {
+        results.add(ClusterResult.failed(task.target, String.valueOf(e.getCause())));
+      } catch (InterruptedException e) {
+        tasks.forEach(pending -> abandon(pending, sinkLock));
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while collecting from clusters", e);
+      }
+    }
+
+    for (ClusterResult result : results) {
+      if (result.error() != null) {
+        System.err.println("Error collecting from cluster " + result.cluster().location() + "/"
+            + result.cluster().name() + ": " + result.error());
+      }
+    }
+    return results;
+  }
+
+  // A task still running after it is given up on may list another page; it is dropped
+  private static void abandon(ClusterTask task, Object sinkLock) {
+    synchronized (sinkLock) {
+      task.abandoned = true;
+    }
+    task.future.cancel(true);
+  }
+
+  // Relabels each page into a batch of its own and hands it to the sink; returns the sample count
+  private static int collectCluster(ClusterTarget target, Set<String> namespaces, int pageSize,
+      CollectionEngine engine, SampleSink sink) throws IOException {
+    ApiClient client = ClientRegistry.shared().kubernetes(target.endpoint(),
+        target.caCertificate());
+    Map<LabelSet, LabelSet> relabelled = new HashMap<>();
+    AtomicInteger samples = new AtomicInteger();
+    SampleSink relabelling = page -> {
+      SampleBatch batch = SampleBatch.acquire();
+      try {
+        for (int i = 0; i < page.size(); i++) {
+          LabelSet labels = relabelled.computeIfAbsent(page.labels(i),
+              labelSet -> labelSet.with("cluster", target.name()));
+          batch.add(labels, page.metric(i), page.timestamp(i), page.value(i));
+        }
+        samples.addAndGet(batch.size());
+        sink.accept(batch);
+      } finally {
+        SampleBatch.release(batch);
+      }
+    };
+    GKEHelper.streamPodMetrics(client, namespaces, pageSize, engine, relabelling);
+    GKEHelper.streamNodeMetrics(client, pageSize, engine, relabelling);
+    return samples.get();
+  }
+
+  // A cluster's collection and when it started running; time spent queued for a permit doesn't
+  // count towards its timeout
+  private static class ClusterTask {
+
+    private final ClusterTarget target;
+    private Future<Integer> future;
+    private volatile long startedNanos;
+    private volatile boolean started;
+    // Guarded by the sink lock
+    private boolean abandoned;
+
+    ClusterTask(ClusterTarget target) {
+      this.target = target;
+    }
+
+    void started() {
+      if (!started) {
+        startedNanos = System.nanoTime();
+        started = true;
+      }
+    }
+
+    int await(Duration timeout)
+        throws ExecutionException, InterruptedException, TimeoutException {
+      while (true) {
+        boolean running = started;
+        long remaining = running
+            ? startedNanos + timeout.toNanos() - System.nanoTime() : timeout.toNanos();
+        try {
+          return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          if (running) {
+            throw e;
+          }
+        }
+      }
+    }
+  }
+
+  public record ClusterTarget(String name, String location, String endpoint,
+      String caCertificate) {
+
+  }
+
+  // Samples delivered from a cluster, or the reason it was skipped
+  public record ClusterResult(ClusterTarget cluster, int samples, String error) {
+
+    static ClusterResult failed(ClusterTarget cluster, String error) {
+      return new ClusterResult(cluster, 0, error);
+    }
+  }
+}
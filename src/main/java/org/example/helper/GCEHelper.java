@@ -1,15 +1,10 @@
 package org.example.helper;
 
 import com.google.api.MetricDescriptor;
-import com.google.cloud.compute.v1.Instance;
-import com.google.cloud.compute.v1.InstancesClient;
-import com.google.cloud.compute.v1.InstancesClient.ListPagedResponse;
-import com.google.cloud.compute.v1.ListInstancesRequest;
-import com.google.cloud.compute.v1.Region;
-import com.google.cloud.compute.v1.RegionsClient;
 import com.google.cloud.monitoring.v3.MetricServiceClient;
 import com.google.monitoring.v3.Aggregation;
 import com.google.monitoring.v3.ListTimeSeriesRequest;
+import com.google.monitoring.v3.Point;
 import com.google.monitoring.v3.ProjectName;
 import com.google.monitoring.v3.TimeInterval;
 import com.google.monitoring.v3.TimeSeries;
@@ -17,7 +12,10 @@ import com.google.protobuf.Duration;
 import com.google.protobuf.util.Timestamps;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class GCEHelper {
 
@@ -39,37 +37,12 @@ public class GCEHelper {
       "compute.googleapis.com/instance/disk/write_bytes_count"
   );
 
-  static List<MetricPair> initializeMetricPairs(String projectId, List<String> metricNames,
-      MetricServiceClient metricServiceClient) throws IOException {
-    List<MetricPair> metricPairs = new ArrayList<>();
-    for (String metricName : metricNames) {
-      // Ensure metricName has the full path with projectId
-      String fullMetricName = String.format("projects/%s/metricDescriptors/%s", projectId,
-          metricName);
-      MetricDescriptor descriptor = metricServiceClient.getMetricDescriptor(fullMetricName);
-      Aggregation aggregation = getAggregationForMetric(descriptor);
-      metricPairs.add(new MetricPair(metricName, aggregation));
-    }
-    return metricPairs;
-  }
-
-  public static List<String> listZonesInRegion(String projectId, String region) {
-    List<String> zones = new ArrayList<>();
-    try (RegionsClient regionsClient = RegionsClient.create()) {
-      // Get the region details
-      Region regionDetails = regionsClient.get(projectId, region);
-
-      // List and print zones available in the region
-      // System.out.println("Zones in region " + region + ":");
-      for (String zone : regionDetails.getZonesList()) {
-        String zoneName = zone.substring(zone.lastIndexOf('/') + 1);
-        // System.out.println(zoneName);
-        zones.add(zoneName);
-      }
-    } catch (IOException e) {
-      System.out.println("Error occurred while listing zones: " + e.getMessage());
-    }
-    return zones;
+  static MetricPair initializeMetricPair(String projectId, String metricName,
+      MetricServiceClient metricServiceClient, Reduction reduction) {
+    MetricDescriptor descriptor = MetricDescriptorCache.shared()
+        .get(projectId, metricName, metricServiceClient);
+    Aggregation aggregation = getAggregationForMetric(descriptor, reduction);
+    return new MetricPair(metricName, aggregation);
   }
 
   public static String removePrefix(String str, String prefix) {
@@ -80,80 +53,220 @@ public class GCEHelper {
   }
 
   public static List<String> fetchMetrics(String projectId, String region) throws IOException {
-    List<String> zones = listZonesInRegion(projectId, region);
+    try (CollectionEngine engine = CollectionEngine.withDefaults()) {
+      return fetchMetrics(projectId, region, engine);
+    }
+  }
+
+  public static List<String> fetchMetrics(String projectId, String region,
+      CollectionEngine engine) throws IOException {
+    List<String> columns = metricColumns();
+    int[] columnIds = SampleBatch.columns(columns);
     List<String> joiner = new ArrayList<>();
-    for (String zone : zones) {
-      try (MetricServiceClient metricServiceClient = MetricServiceClient.create();
-          InstancesClient instancesClient = InstancesClient.create()) {
-
-        List<MetricPair> metricPairs = initializeMetricPairs(projectId, metrics,
-            metricServiceClient);
-
-        ListInstancesRequest request = ListInstancesRequest.newBuilder()
-            .setProject(projectId).setZone(zone).setFilter("scheduling.preemptible = true").build();
-
-        ListPagedResponse response = instancesClient.list(request);
-        StringBuilder output = new StringBuilder();
-
-        for (Instance instance : response.iterateAll()) {
-          StringBuilder instanceData = new StringBuilder("instance:").append(instance.getName())
-              .append(",zone:").append(zone)
-              .append(",status:").append(instance.getStatus());
-          for (MetricPair metricPair : metricPairs) {
-            instanceData.append(",")
-                .append(removePrefix(metricPair.metricName, "compute.googleapis.com/instance/"))
-                .append(":").append(
-                    fetchMetrics(metricPair, projectId, zone, instance.getId(), metricServiceClient));
+    fetchMetrics(projectId, region, engine, batch -> {
+      StringBuilder output = new StringBuilder();
+      batch.forEachRow(columnIds,
+          (labels, values) -> LegacyHealthEncoder.format(labels, values, columns, output));
+      if (!output.isEmpty()) {
+        joiner.add(output.toString());
+      }
+    }).report("GCE metrics for " + region);
+    return joiner;
+  }
+
+  // Preemptible instances come from the InstanceInventory, so zones are only listed when the
+  // inventory is refreshed, and only zones with a preemptible instance are queried. Zones, and
+  // the metrics within each zone, are collected concurrently.
+  // Each zone's batch is handed to the sink, in zone order, as soon as it is ready. Samples are
+  // labelled with instance, zone and status, and named after metricColumns(). A zone the
+  // inventory could not reach is left out, and a metric that cannot be fetched is reported as
+  // NaN; both are recorded in the returned PartialResults.
+  public static PartialResults fetchMetrics(String projectId, String region,
+      CollectionEngine engine, SampleSink sink) throws IOException {
+    return fetchMetrics(projectId, region, Reduction.MAX, engine, sink);
+  }
+
+  public static PartialResults fetchMetrics(String projectId, String region, Reduction reduction,
+      CollectionEngine engine, SampleSink sink) throws IOException {
+    PartialResults partial = new PartialResults();
+    InstanceInventory inventory = InstanceInventory.shared();
+    InstanceInventory.Snapshot snapshot = inventory.snapshot(projectId, engine);
+    for (String zone : snapshot.unreachableZonesIn(region)) {
+      partial.record(zone, new IOException("Zone unreachable while listing instances"));
+    }
+    engine.forEachOrdered(snapshot.preemptibleZonesIn(region),
+        zone -> {
+          try (Telemetry.Timer timer = Telemetry.shared().time("gce_zone")) {
+            return fetchZoneMetrics(projectId, zone, reduction, engine, inventory, snapshot,
+                partial);
+          }
+        },
+        batch -> {
+          try {
+            sink.accept(batch);
+          } finally {
+            SampleBatch.release(batch);
+          }
+        });
+    return partial;
+  }
+
+  public static List<String> metricColumns() {
+    return metrics.stream()
+        .map(metric -> removePrefix(metric, "compute.googleapis.com/instance/"))
+        .toList();
+  }
+
+  private static SampleBatch fetchZoneMetrics(String projectId, String zone, Reduction reduction,
+      CollectionEngine engine, InstanceInventory inventory, InstanceInventory.Snapshot snapshot,
+      PartialResults partial) throws IOException {
+    MetricServiceClient metricServiceClient = ClientRegistry.shared().metricService();
+
+    // One ListTimeSeries call per metric for the whole zone, joined back by instance id
+    List<Map<String, Double>> metricValues = engine.mapOrdered(metrics, metricName -> {
+      try {
+        // Cached descriptors don't cost an RPC, so only misses go through the rate limiter
+        MetricPair metricPair = MetricDescriptorCache.shared().isFresh(projectId, metricName)
+            ? initializeMetricPair(projectId, metricName, metricServiceClient, reduction)
+            : engine.call(CollectionEngine.MONITORING, "getMetricDescriptor",
+                () -> initializeMetricPair(projectId, metricName, metricServiceClient,
+                    reduction));
+        return engine.call(CollectionEngine.MONITORING, "listTimeSeries",
+            () -> fetchMetricsByInstance(metricPair, projectId, zone, metricServiceClient));
+      } catch (InterruptedException e) {
+        throw e;
+      } catch (Exception e) {
+        partial.record(zone + "/" + metricName, e);
+        return null;
+      }
+    });
+
+    // Metrics for an instance the inventory has never seen mean it is out of date
+    Set<Long> unknownIds = new HashSet<>();
+    for (Map<String, Double> values : metricValues) {
+      if (values != null) {
+        for (String instanceId : values.keySet()) {
+          if (!instanceId.isEmpty() && !snapshot.isKnown(Long.parseLong(instanceId))) {
+            unknownIds.add(Long.parseLong(instanceId));
           }
-          output.append(instanceData);
-        }
-        if (!output.isEmpty()) {
-          joiner.add(output.toString());
         }
       }
     }
-    return joiner;
-  }
+    InstanceInventory.Snapshot current = snapshot;
+    if (!unknownIds.isEmpty()) {
+      try {
+        current = inventory.refreshForUnknown(projectId, snapshot, unknownIds, engine);
+      } catch (IOException | RuntimeException e) {
+        partial.record(zone + "/inventory", e);
+      }
+    }
 
-  private static Aggregation getAggregationForMetric(MetricDescriptor descriptor) {
-    switch (descriptor.getMetricKind()) {
-      case GAUGE:
-        return Aggregation.newBuilder()
-            .setAlignmentPeriod(Duration.newBuilder().setSeconds(60))
-            .setPerSeriesAligner(Aggregation.Aligner.ALIGN_MEAN).build();
-      case CUMULATIVE:
-        return Aggregation.newBuilder()
-            .setAlignmentPeriod(Duration.newBuilder().setSeconds(60))
-            .setPerSeriesAligner(Aggregation.Aligner.ALIGN_SUM).build();
-      default:
-        return Aggregation.newBuilder().build();
+    SampleBatch batch = SampleBatch.acquire();
+    int[] columns = SampleBatch.columns(metricColumns());
+    long now = System.currentTimeMillis();
+    for (InstanceInventory.InventoryInstance instance : current.instancesIn(zone)) {
+      if (!instance.preemptible()) {
+        continue;
+      }
+      String instanceId = String.valueOf(instance.id());
+      LabelSet labels = LabelSet.of("instance", instance.name(), "zone", zone,
+          "status", instance.status());
+      for (int i = 0; i < columns.length; i++) {
+        Map<String, Double> values = metricValues.get(i);
+        batch.add(labels, columns[i], now,
+            values == null ? Double.NaN : values.getOrDefault(instanceId, 0.0));
+      }
     }
+    return batch;
+  }
+
+  private static Aggregation getAggregationForMetric(MetricDescriptor descriptor,
+      Reduction reduction) {
+    return Aggregation.newBuilder()
+        .setPerSeriesAligner(reduction.aligner(descriptor))
+        .setCrossSeriesReducer(reduction.reducer)
+        .addGroupByFields("resource.labels.instance_id")
+        .build();
   }
 
-  private static String fetchMetrics(MetricPair metricPair, String projectId, String zone,
-      long instanceId, MetricServiceClient client) throws IOException {
+  // Returns the reduced value per instance_id for every instance in the zone reporting the
+  // metric. The alignment period spans the whole window, so each instance comes back as a single
+  // point. The window ends at Watermarks.closedUntil rather than now, so the point covers every
+  // sample in it, late ones included, and the next window starts where this one ended. Instances
+  // without a point newer than their watermark keep the previous value.
+  private static Map<String, Double> fetchMetricsByInstance(MetricPair metricPair,
+      String projectId, String zone, MetricServiceClient client) {
     ProjectName projectName = ProjectName.of(projectId);
+    Watermarks watermarks = Watermarks.shared();
+    String scope = metricPair.metricName + "|" + zone;
+    long end = watermarks.closedUntil(System.currentTimeMillis());
+    long start = watermarks.windowStart(scope, end, 300_000);
     TimeInterval interval = TimeInterval.newBuilder()
-        .setEndTime(Timestamps.fromMillis(System.currentTimeMillis()))
-        .setStartTime(Timestamps.fromMillis(System.currentTimeMillis() - 300_000))
+        .setEndTime(Timestamps.fromMillis(end))
+        .setStartTime(Timestamps.fromMillis(start))
+        .build();
+
+    // Monitoring rejects alignment periods under a minute
+    long windowSeconds = Math.max(60, (end - start + 999) / 1000);
+    Aggregation aggregation = metricPair.aggregation.toBuilder()
+        .setAlignmentPeriod(Duration.newBuilder().setSeconds(windowSeconds))
         .build();
 
     ListTimeSeriesRequest request = ListTimeSeriesRequest.newBuilder()
         .setName(projectName.toString())
-        .setFilter(String.format(
-            "metric.type=\"%s\" AND resource.labels.instance_id=\"%s\" AND resource.labels.zone=\"%s\"",
-            metricPair.metricName, instanceId, zone))
+        .setFilter(String.format("metric.type=\"%s\" AND resource.labels.zone=\"%s\"",
+            metricPair.metricName, zone))
         .setInterval(interval)
-        .setAggregation(metricPair.aggregation)
+        .setAggregation(aggregation)
         .build();
 
-    double maxVal = 0.0;
     for (TimeSeries timeSeries : client.listTimeSeries(request).iterateAll()) {
-      for (var point : timeSeries.getPointsList()) {
-        maxVal = Math.max(maxVal, point.getValue().getDoubleValue());
+      String instanceId = timeSeries.getResource().getLabelsOrDefault("instance_id", "");
+      // Points are newest first
+      if (timeSeries.getPointsCount() == 0) {
+        continue;
+      }
+      Point point = timeSeries.getPoints(0);
+      long endMillis = Timestamps.toMillis(point.getInterval().getEndTime());
+      if (endMillis > watermarks.endMillis(scope, instanceId)) {
+        watermarks.advance(scope, instanceId, endMillis,
+            Math.max(0.0, MonitoringQueryEngine.numericValue(point.getValue())));
+      }
+    }
+    return watermarks.lastValues(scope);
+  }
+
+  // How an instance's points are reduced to one value, over time and then across its series
+  // (e.g. one per disk)
+  public enum Reduction {
+    MAX(Aggregation.Reducer.REDUCE_MAX),
+    MEAN(Aggregation.Reducer.REDUCE_MEAN),
+    PERCENTILE_99(Aggregation.Reducer.REDUCE_PERCENTILE_99);
+
+    private final Aggregation.Reducer reducer;
+
+    Reduction(Aggregation.Reducer reducer) {
+      this.reducer = reducer;
+    }
+
+    // Counters are reported as their total over the window (e.g. bytes sent, not bytes/s) and
+    // booleans as the fraction of the window they were true. Percentile aligners only accept
+    // distributions, so numeric gauges take the max over time before the percentile across
+    // series.
+    Aggregation.Aligner aligner(MetricDescriptor descriptor) {
+      if (descriptor.getValueType() == MetricDescriptor.ValueType.DISTRIBUTION) {
+        return this == MEAN
+            ? Aggregation.Aligner.ALIGN_PERCENTILE_50
+            : Aggregation.Aligner.ALIGN_PERCENTILE_99;
+      }
+      if (descriptor.getValueType() == MetricDescriptor.ValueType.BOOL) {
+        return Aggregation.Aligner.ALIGN_FRACTION_TRUE;
       }
+      return switch (descriptor.getMetricKind()) {
+        case DELTA, CUMULATIVE -> Aggregation.Aligner.ALIGN_SUM;
+        default -> this == MEAN ? Aggregation.Aligner.ALIGN_MEAN : Aggregation.Aligner.ALIGN_MAX;
+      };
     }
-    return String.valueOf(maxVal);
   }
 
   record MetricPair(String metricName, Aggregation aggregation) {
@@ -6,15 +6,37 @@ import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.Bucket;
 import com.google.cloud.storage.Storage;
-import com.google.cloud.storage.StorageOptions;
+import com.google.cloud.storage.Storage.BlobField;
+import com.google.cloud.storage.Storage.BlobGetOption;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+import com.google.cloud.storage.StorageException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class GCSHelper {
 
+  // OVERWRITE replaces filePath in place. PARTITIONED writes each snapshot to its own
+  // time-partitioned object and then points "<filePath>.latest" at it.
+  public enum PublishMode {
+    OVERWRITE, PARTITIONED
+  }
+
+  private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter
+      .ofPattern("yyyy/MM/dd/HHmmss").withZone(ZoneOffset.UTC);
+
+  // Last known generation per object ("bucket/name"); 0 means the object does not exist
+  private static final Map<String, Long> generations = new ConcurrentHashMap<>();
+
   public static void authenticateImplicitWithAdc(String project) {
-    Storage storage = StorageOptions.newBuilder().setProjectId(project).build().getService();
+    Storage storage = ClientRegistry.shared().storage(project);
 
     System.out.println("Buckets:");
     Page<Bucket> buckets = storage.list();
@@ -24,26 +46,153 @@ public class GCSHelper {
     System.out.println("Listed all storage buckets.");
   }
 
+  // Opens a sink whose upload is a single conditional write: it only succeeds if the object is
+  // still at the generation we saw, and readers see either the old or the new object, never a gap.
+  // The generation lookup and pointer update go through engine, which must outlive the sink.
+  public static GCSRecordSink openSink(String projectId, String bucketName, String filePath,
+      String contentType, int chunkSize, PublishMode mode, CollectionEngine engine)
+      throws IOException {
+    return openSink(projectId, bucketName, filePath, contentType, chunkSize, mode, Instant.now(),
+        engine);
+  }
+
+  // collectedAt names the partition, so data uploaded late (e.g. from the Spool) still lands in
+  // the partition of the cycle that collected it
+  public static GCSRecordSink openSink(String projectId, String bucketName, String filePath,
+      String contentType, int chunkSize, PublishMode mode, Instant collectedAt,
+      CollectionEngine engine) throws IOException {
+    Storage storage = ClientRegistry.shared().storage(projectId, chunkSize);
+    if (mode == PublishMode.PARTITIONED) {
+      String partitionPath = partitionPath(filePath, collectedAt);
+      BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, partitionPath))
+          .setContentType(contentType)
+          .build();
+      return new GCSRecordSink(storage, blobInfo,
+          generation -> publishPointer(storage, bucketName, filePath + ".latest", partitionPath,
+              engine),
+          BlobWriteOption.doesNotExist());
+    }
+
+    String key = bucketName + "/" + filePath;
+    long generation = currentGeneration(storage, bucketName, filePath, engine);
+    // Forgotten until the upload commits, so a failed or aborted upload is looked up again
+    generations.remove(key);
+    BlobInfo blobInfo = BlobInfo.newBuilder(blobId(bucketName, filePath, generation))
+        .setContentType(contentType)
+        .build();
+    return new GCSRecordSink(storage, blobInfo, committed -> {
+      if (committed != 0) {
+        generations.put(key, committed);
+      }
+    }, generation == 0 ? BlobWriteOption.doesNotExist() : BlobWriteOption.generationMatch());
+  }
+
   public static void uploadToGCS(String projectId, String region, String bucketName, String data)
       throws IOException {
+    try (CollectionEngine engine = CollectionEngine.withDefaults()) {
+      uploadToGCS(projectId, region, bucketName, data, engine);
+    }
+  }
+
+  public static void uploadToGCS(String projectId, String region, String bucketName, String data,
+      CollectionEngine engine) throws IOException {
     String filePath = "InstanceHealth.csv";
-    Storage storage = StorageOptions.newBuilder().setProjectId(projectId).build().getService();
-    BlobId blobId = BlobId.of(bucketName, filePath);
-    BlobInfo blobInfo = BlobInfo.newBuilder(blobId).build();
+    Storage storage = ClientRegistry.shared().storage(projectId);
+    long generation = currentGeneration(storage, bucketName, filePath, engine);
+    BlobInfo blobInfo = BlobInfo.newBuilder(blobId(bucketName, filePath, generation)).build();
+    byte[] content = data.getBytes(StandardCharsets.UTF_8);
 
-    Blob blob = storage.get(blobId);
+    // Overwrite in a single request, conditional on the generation we last saw. Each attempt
+    // reads the content from the start.
+    try {
+      Blob blob = call(engine, "createFrom", "uploading " + filePath, () -> {
+        try (ByteArrayInputStream contentStream = new ByteArrayInputStream(content)) {
+          return storage.createFrom(blobInfo, contentStream, generation == 0
+              ? BlobWriteOption.doesNotExist() : BlobWriteOption.generationMatch());
+        }
+      });
+      generations.put(bucketName + "/" + filePath, blob.getGeneration());
+      System.out.println("File uploaded to GCS: gs://" + bucketName + "/" + filePath);
+    } catch (StorageException e) {
+      generations.remove(bucketName + "/" + filePath);
+      throw e;
+    }
+  }
+
+  // Points "<filePath>.latest" at the partition of collectedAt, for a partition that is already
+  // uploaded but may never have been published (a crash between the two)
+  static void publishLatest(String projectId, String bucketName, String filePath,
+      Instant collectedAt, CollectionEngine engine) throws IOException {
+    publishPointer(ClientRegistry.shared().storage(projectId), bucketName, filePath + ".latest",
+        partitionPath(filePath, collectedAt), engine);
+  }
+
+  static String partitionPath(String filePath, Instant time) {
+    int extension = filePath.lastIndexOf('.');
+    String base = extension > 0 ? filePath.substring(0, extension) : filePath;
+    String suffix = extension > 0 ? filePath.substring(extension) : "";
+    return base + "/" + PARTITION_FORMAT.format(time) + suffix;
+  }
 
-    if (blob != null && blob.exists()) {
-      // Truncate the existing file
-      blob.delete();
-      System.out.println("Existing file truncated: gs://" + bucketName + "/" + filePath);
+  // Small pointer objects are cheap to rewrite, so a lost precondition race is retried once with
+  // a fresh generation
+  private static void publishPointer(Storage storage, String bucketName, String pointerPath,
+      String targetPath, CollectionEngine engine) throws IOException {
+    byte[] content = targetPath.getBytes(StandardCharsets.UTF_8);
+    for (int attempt = 0; ; attempt++) {
+      long generation = currentGeneration(storage, bucketName, pointerPath, engine);
+      BlobInfo blobInfo = BlobInfo.newBuilder(blobId(bucketName, pointerPath, generation))
+          .setContentType("text/plain")
+          .build();
+      try {
+        Blob blob = call(engine, "create", "updating " + pointerPath,
+            () -> storage.create(blobInfo, content, generation == 0
+                ? BlobTargetOption.doesNotExist() : BlobTargetOption.generationMatch()));
+        generations.put(bucketName + "/" + pointerPath, blob.getGeneration());
+        System.out.println("Pointer updated: gs://" + bucketName + "/" + pointerPath + " -> "
+            + targetPath);
+        return;
+      } catch (StorageException e) {
+        generations.remove(bucketName + "/" + pointerPath);
+        if (e.getCode() != 412 || attempt > 0) {
+          throw e;
+        }
+      }
     }
+  }
 
-    // Upload the new data
-    try (ByteArrayInputStream contentStream = new ByteArrayInputStream(
-        data.getBytes(StandardCharsets.UTF_8))) {
-      storage.createFrom(blobInfo, contentStream);
-      System.out.println("File uploaded to GCS: gs://" + bucketName + "/" + filePath);
+  private static BlobId blobId(String bucketName, String filePath, long generation) {
+    return BlobId.of(bucketName, filePath, generation == 0 ? null : generation);
+  }
+
+  // The lookup runs outside the map, so a slow request never blocks other objects' entries
+  private static long currentGeneration(Storage storage, String bucketName, String filePath,
+      CollectionEngine engine) throws IOException {
+    String key = bucketName + "/" + filePath;
+    Long known = generations.get(key);
+    if (known != null) {
+      return known;
+    }
+    Blob blob = call(engine, "get", "looking up " + key, () -> storage.get(
+        BlobId.of(bucketName, filePath), BlobGetOption.fields(BlobField.GENERATION)));
+    long generation = blob != null ? blob.getGeneration() : 0L;
+    Long raced = generations.putIfAbsent(key, generation);
+    return raced != null ? raced : generation;
+  }
+
+  // Runs call through the engine under the STORAGE limits. StorageExceptions that outlast the
+  // retry policy are rethrown as they are, so callers can still tell a lost precondition (412).
+  private static <T> T call(CollectionEngine engine, String method, String action,
+      Callable<T> call) throws IOException {
+    try {
+      return engine.call(CollectionEngine.STORAGE, method, call);
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while " + action, e);
+    } catch (Exception e) {
+      throw new IOException("Error " + action, e);
     }
   }
 }
@@ -0,0 +1,149 @@
+package org.example.helper;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.BlobWriteSession;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+
+// Streams newline-separated records into a GCS object through a resumable upload. At most one
+// chunk is buffered in memory; each full chunk is uploaded while collection carries on, and the
+// object only becomes visible (replacing any previous version) when the sink is closed. The chunk
+// size is the storage client's (see ClientRegistry.storage(projectId, chunkSize)).
+public class GCSRecordSink implements RecordSink, AutoCloseable {
+
+  // Resumable upload chunks must be a multiple of 256 KiB
+  public static final int DEFAULT_CHUNK_SIZE = 16 * 256 * 1024;
+
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+  private final BlobInfo blobInfo;
+  private final CommitHook onCommit;
+  private final BlobWriteSession session;
+  private final CountingOutputStream out;
+  private long records;
+  private boolean aborted;
+
+  public GCSRecordSink(Storage storage, BlobInfo blobInfo, BlobWriteOption... options)
+      throws IOException {
+    this(storage, blobInfo, generation -> {
+    }, options);
+  }
+
+  // onCommit runs after the object has been finalized, with its new generation, e.g. to publish
+  // a pointer to it
+  public GCSRecordSink(Storage storage, BlobInfo blobInfo, CommitHook onCommit,
+      BlobWriteOption... options) throws IOException {
+    this.blobInfo = blobInfo;
+    this.onCommit = onCommit;
+    this.session = storage.blobWriteSession(blobInfo, options);
+    WritableByteChannel channel = session.open();
+    this.out = new CountingOutputStream(
+        new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE));
+  }
+
+  @Override
+  public void write(String record) throws IOException {
+    if (records > 0) {
+      out.write('\n');
+    }
+    out.write(record.getBytes(StandardCharsets.UTF_8));
+    records++;
+  }
+
+  // Raw byte access for encoders that do their own framing; bytes written here count towards
+  // bytes() but not records()
+  public OutputStream stream() {
+    return out;
+  }
+
+  public long records() {
+    return records;
+  }
+
+  public long bytes() {
+    return out.count;
+  }
+
+  // Abandons the upload without finalizing it, so a failed collection never replaces the
+  // previously published object with a partial one. Closing the channel is what finalizes the
+  // object, so it is left open: the buffered chunk is dropped, the session's result is cancelled
+  // so nothing can observe it as committed, and GCS discards the unfinished resumable upload
+  // when it expires. Later writes are discarded.
+  public void abort() {
+    aborted = true;
+    out.release();
+    session.getResult().cancel(true);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (aborted) {
+      System.out.println("Upload aborted: gs://" + blobInfo.getBucket() + "/" + blobInfo.getName());
+      return;
+    }
+    // Flushing the last chunk and finalizing the object is the part of the upload that
+    // collection does not overlap with
+    try (Telemetry.Timer timer = Telemetry.shared().time("upload_finalize")) {
+      out.close();
+    }
+    Telemetry.shared().add("collector_upload_bytes_total", out.count,
+        "bucket", blobInfo.getBucket());
+    Telemetry.shared().count("collector_uploads_total", "bucket", blobInfo.getBucket());
+    System.out.println("File uploaded to GCS: gs://" + blobInfo.getBucket() + "/"
+        + blobInfo.getName());
+    onCommit.committed(finishedGeneration(session.getResult()));
+  }
+
+  // The session's result completes once close() has finalized the object
+  private static long finishedGeneration(ApiFuture<BlobInfo> result) throws IOException {
+    try {
+      Long generation = result.get().getGeneration();
+      return generation != null ? generation : 0;
+    } catch (ExecutionException e) {
+      throw new IOException("Error finalizing upload", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while finalizing upload", e);
+    }
+  }
+
+  @FunctionalInterface
+  public interface CommitHook {
+
+    void committed(long generation) throws IOException;
+  }
+
+  private static class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    void release() {
+      out = OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
@@ -3,9 +3,9 @@ package org.example.helper;
 import com.google.cloud.container.v1.ClusterManagerClient;
 import com.google.container.v1.Cluster;
 import com.google.container.v1.ListClustersResponse;
+import io.kubernetes.client.custom.Quantity;
 import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.ApiException;
-import io.kubernetes.client.openapi.Configuration;
 import io.kubernetes.client.openapi.apis.CoreV1Api;
 import io.kubernetes.client.openapi.models.V1Node;
 import io.kubernetes.client.openapi.models.V1NodeList;
@@ -13,166 +13,271 @@ import io.kubernetes.client.openapi.models.V1PersistentVolumeClaim;
 import io.kubernetes.client.openapi.models.V1PersistentVolumeClaimList;
 import io.kubernetes.client.openapi.models.V1Pod;
 import io.kubernetes.client.openapi.models.V1PodList;
-import io.kubernetes.client.util.Config;
 import java.io.IOException;
-import java.util.StringJoiner;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 public class GKEHelper {
 
-  public static String getGkeClusterInRegion(String projectId, String region, String clusterId) {
+  // CACHE reads pods and PVCs from the watch-backed KubernetesCache; PAGED lists them from the
+  // API server page by page on every collection
+  public enum Listing {
+    CACHE,
+    PAGED
+  }
+
+  public static String getGkeClusterInRegion(String projectId, String region, String clusterId,
+      CollectionEngine engine) throws IOException {
     String location = String.format("projects/%s/locations/%s/clusters/%s", projectId, region,
         clusterId);
 
-    StringBuilder builder = new StringBuilder();
-    try (ClusterManagerClient clusterManagerClient = ClusterManagerClient.create()) {
-      Cluster cluster = clusterManagerClient.getCluster(location);
-      builder.append("ClusterName:").append(cluster.getName()).append(",")
-          .append("ClusterStatus:").append(cluster.getStatus()).append(",")
-          .append("ClusterLocation:").append(cluster.getLocation()).append(",")
-          .append("ClusterEndpoint:").append(cluster.getEndpoint()).append("\n");
-    } catch (Exception e) {
-      System.err.println("Error listing GKE clusters: " + e.getMessage());
-      e.printStackTrace();
-    }
-    return builder.toString();
+    ClusterManagerClient clusterManagerClient = ClientRegistry.shared().clusterManager();
+    Cluster cluster = call(engine, CollectionEngine.CONTAINER, "getCluster",
+        "getting GKE cluster " + clusterId, () -> clusterManagerClient.getCluster(location));
+    return new StringBuilder()
+        .append("ClusterName:").append(cluster.getName()).append(",")
+        .append("ClusterStatus:").append(cluster.getStatus()).append(",")
+        .append("ClusterLocation:").append(cluster.getLocation()).append(",")
+        .append("ClusterEndpoint:").append(cluster.getEndpoint()).append("\n")
+        .toString();
   }
 
-  public static void listGkeClustersInRegion(String projectId, String region) {
+  public static void listGkeClustersInRegion(String projectId, String region,
+      CollectionEngine engine) throws IOException {
     String location = String.format("projects/%s/locations/%s", projectId, region);
 
-    try (ClusterManagerClient clusterManagerClient = ClusterManagerClient.create()) {
+    ClusterManagerClient clusterManagerClient = ClientRegistry.shared().clusterManager();
+    ListClustersResponse response = call(engine, CollectionEngine.CONTAINER, "listClusters",
+        "listing GKE clusters", () -> clusterManagerClient.listClusters(location));
 
-      ListClustersResponse response = clusterManagerClient.listClusters(location);
+    for (Cluster cluster : response.getClustersList()) {
+      System.out.printf("Cluster Name: %s%n", cluster.getName());
+      System.out.printf("Cluster Status: %s%n", cluster.getStatus());
+      System.out.printf("Cluster Location: %s%n", cluster.getLocation());
+      System.out.printf("Cluster Endpoint: %s%n", cluster.getEndpoint());
+      System.out.println("------");
+    }
+  }
 
-      for (Cluster cluster : response.getClustersList()) {
-        System.out.printf("Cluster Name: %s%n", cluster.getName());
-        System.out.printf("Cluster Status: %s%n", cluster.getStatus());
-        System.out.printf("Cluster Location: %s%n", cluster.getLocation());
-        System.out.printf("Cluster Endpoint: %s%n", cluster.getEndpoint());
-        System.out.println("------");
-      }
+  // Runs call through the engine, within the API's concurrency, rate and deadline limits,
+  // surfacing whatever still fails after retries as an IOException; action is for error messages
+  private static <T> T call(CollectionEngine engine, String api, String method, String action,
+      Callable<T> call) throws IOException {
+    try {
+      return engine.call(api, method, call);
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (ApiException e) {
+      throw new IOException("Error " + action + ": HTTP " + e.getCode(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while " + action, e);
     } catch (Exception e) {
-      System.err.println("Error listing GKE clusters: " + e.getMessage());
-      e.printStackTrace();
+      throw new IOException("Error " + action, e);
     }
   }
 
-  public static String fetchPodMetrics() {
+  // Container resource requests, labelled by namespace, pod and container. Pods, nodes and PVCs
+  // are read from the informer-backed KubernetesCache rather than listed on every call.
+  public static SampleBatch fetchPodMetrics() {
     try {
-      String namespace = "default";
-
-      // Initialize Kubernetes API client
-      ApiClient client = Config.defaultClient();
-      Configuration.setDefaultApiClient(client);
-      // Use the CoreV1 API to list pods
-      CoreV1Api api = new CoreV1Api();
-
-      StringJoiner podMetrics = new StringJoiner("\n");
-
-      V1PodList podList = api.listNamespacedPod(namespace).execute();
-      for (V1Pod pod : podList.getItems()) {
-        StringJoiner containerMetrics = new StringJoiner(",");
-
-        String podName = pod.getMetadata().getName();
-        containerMetrics.add(podName);
-
-        pod.getSpec().getContainers().forEach(container -> {
-          containerMetrics.add(container.getName());
-          if (container.getResources() != null && container.getResources().getRequests() != null) {
-            var requests = container.getResources().getRequests();
-            containerMetrics.add(
-                requests.get("cpu") != null ? requests.get("cpu").getNumber().toString() : "");
-            containerMetrics.add(
-                requests.get("memory") != null ? requests.get("memory").getNumber().toString()
-                    : "");
-            containerMetrics.add(
-                requests.get("ephemeral-storage") != null ? requests.get("ephemeral-storage")
-                    .getNumber().toString() : "");
-          }
-        });
-
-        podMetrics.add(containerMetrics.toString());
-      }
-      return podMetrics.toString();
-    } catch (ApiException e) {
-      Logger.getLogger(GKEHelper.class.getName())
-          .log(Level.SEVERE, "Error fetching pod metrics", e);
+      return fetchPodMetrics(Set.of("default"));
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    return "";
   }
 
-  public static String fetchNodeMetrics() throws IOException {
-    // Initialize Kubernetes API client
-    ApiClient client = Config.defaultClient();
-    Configuration.setDefaultApiClient(client);
+  // An empty namespace set selects every namespace
+  public static SampleBatch fetchPodMetrics(Set<String> namespaces) throws IOException {
+    SampleBatch batch = SampleBatch.acquire();
+    long now = System.currentTimeMillis();
+    KubernetesCache cache = KubernetesCache.shared();
+    if (namespaces.isEmpty()) {
+      cache.pods().forEach(pod -> addPodRequests(batch, pod, now));
+    } else {
+      for (String namespace : namespaces) {
+        cache.pods(namespace).forEach(pod -> addPodRequests(batch, pod, now));
+      }
+    }
+    return batch;
+  }
+
+  // Lists pods straight from the API server, pageSize at a time, handing each page's samples to
+  // the sink before requesting the next one. Memory is bounded by the page size rather than the
+  // cluster size. An empty namespace set lists across all namespaces.
+  public static void streamPodMetrics(Set<String> namespaces, int pageSize,
+      CollectionEngine engine, SampleSink sink) throws IOException {
+    streamPodMetrics(ClientRegistry.shared().kubernetes(), namespaces, pageSize, engine, sink);
+  }
+
+  public static void streamPodMetrics(ApiClient client, Set<String> namespaces, int pageSize,
+      CollectionEngine engine, SampleSink sink) throws IOException {
+    CoreV1Api api = new CoreV1Api(client);
+    forEachNamespace(namespaces, namespace -> forEachPage("pods", engine,
+        continueToken -> namespace == null
+            ? api.listPodForAllNamespaces().limit(pageSize)._continue(continueToken).execute()
+            : api.listNamespacedPod(namespace).limit(pageSize)._continue(continueToken).execute(),
+        (V1PodList page) -> {
+          long now = System.currentTimeMillis();
+          emit(sink, batch -> page.getItems().forEach(pod -> addPodRequests(batch, pod, now)));
+          return page.getMetadata().getContinue();
+        }));
+  }
 
-    // Use the CoreV1 API to list pods
-    CoreV1Api api = new CoreV1Api();
+  public static void streamNodeMetrics(ApiClient client, int pageSize, CollectionEngine engine,
+      SampleSink sink) throws IOException {
+    CoreV1Api api = new CoreV1Api(client);
+    forEachPage("nodes", engine,
+        continueToken -> api.listNode().limit(pageSize)._continue(continueToken).execute(),
+        (V1NodeList page) -> {
+          long now = System.currentTimeMillis();
+          emit(sink, batch -> page.getItems().forEach(node -> addNodeCapacity(batch, node, now)));
+          return page.getMetadata().getContinue();
+        });
+  }
 
-    StringJoiner nodesMetrics = new StringJoiner("\n");
-    try {
-      StringJoiner nodeMetrics = new StringJoiner(",");
-      V1NodeList nodeList = api.listNode().execute();
-      for (V1Node node : nodeList.getItems()) {
-        String nodeName = node.getMetadata().getName();
-        nodeMetrics.add(nodeName);
-
-        var capacity = node.getStatus().getCapacity();
-        nodeMetrics.add(
-            capacity.get("cpu") != null ? capacity.get("cpu").getNumber().toString() : "");
-        nodeMetrics.add(
-            capacity.get("memory") != null ? capacity.get("memory").getNumber().toString() : "");
-        nodeMetrics.add(
-            capacity.get("ephemeral-storage") != null ? capacity.get("ephemeral-storage")
-                .getNumber().toString() : "");
-
-        var allocatable = node.getStatus().getAllocatable();
-        nodeMetrics.add(
-            allocatable.get("ephemeral-storage") != null ? allocatable.get("ephemeral-storage")
-                .getNumber().toString() : "");
+  public static void streamPodStorageMetrics(Set<String> namespaces, int pageSize,
+      CollectionEngine engine, SampleSink sink) throws IOException {
+    CoreV1Api api = new CoreV1Api(ClientRegistry.shared().kubernetes());
+    forEachNamespace(namespaces, namespace -> forEachPage("persistentvolumeclaims", engine,
+        continueToken -> namespace == null
+            ? api.listPersistentVolumeClaimForAllNamespaces()
+                .limit(pageSize)._continue(continueToken).execute()
+            : api.listNamespacedPersistentVolumeClaim(namespace)
+                .limit(pageSize)._continue(continueToken).execute(),
+        (V1PersistentVolumeClaimList page) -> {
+          long now = System.currentTimeMillis();
+          emit(sink, batch -> page.getItems().forEach(pvc -> addPvcStorage(batch, pvc, now)));
+          return page.getMetadata().getContinue();
+        }));
+  }
+
+  public static SampleBatch fetchNodeMetrics() throws IOException {
+    SampleBatch batch = SampleBatch.acquire();
+    long now = System.currentTimeMillis();
+    for (V1Node node : KubernetesCache.shared().nodes()) {
+      addNodeCapacity(batch, node, now);
+    }
+    return batch;
+  }
+
+  public static SampleBatch fetchPodStorageMetrics(String namespace) throws IOException {
+    SampleBatch batch = SampleBatch.acquire();
+    long now = System.currentTimeMillis();
+    for (V1PersistentVolumeClaim pvc : KubernetesCache.shared().persistentVolumeClaims(namespace)) {
+      addPvcStorage(batch, pvc, now);
+    }
+    return batch;
+  }
 
+  private static void addPodRequests(SampleBatch batch, V1Pod pod, long now) {
+    String namespace = pod.getMetadata().getNamespace();
+    String podName = pod.getMetadata().getName();
+    pod.getSpec().getContainers().forEach(container -> {
+      if (container.getResources() != null && container.getResources().getRequests() != null) {
+        LabelSet labels = LabelSet.of("namespace", namespace, "pod", podName,
+            "container", container.getName());
+        var requests = container.getResources().getRequests();
+        addQuantity(batch, labels, "container/request/cpu", now, requests, "cpu");
+        addQuantity(batch, labels, "container/request/memory", now, requests, "memory");
+        addQuantity(batch, labels, "container/request/ephemeral-storage", now, requests,
+            "ephemeral-storage");
       }
-      nodesMetrics.add(nodeMetrics.toString());
-      return nodesMetrics.toString();
-    } catch (ApiException e) {
-      System.err.println("Error fetching node metrics: " + e.getMessage());
-      e.printStackTrace();
+    });
+  }
+
+  private static void addNodeCapacity(SampleBatch batch, V1Node node, long now) {
+    LabelSet labels = LabelSet.of("node", node.getMetadata().getName());
+
+    var capacity = node.getStatus().getCapacity();
+    addQuantity(batch, labels, "node/capacity/cpu", now, capacity, "cpu");
+    addQuantity(batch, labels, "node/capacity/memory", now, capacity, "memory");
+    addQuantity(batch, labels, "node/capacity/ephemeral-storage", now, capacity,
+        "ephemeral-storage");
+
+    var allocatable = node.getStatus().getAllocatable();
+    addQuantity(batch, labels, "node/allocatable/ephemeral-storage", now, allocatable,
+        "ephemeral-storage");
+  }
+
+  private static void addPvcStorage(SampleBatch batch, V1PersistentVolumeClaim pvc, long now) {
+    LabelSet labels = LabelSet.of("namespace", pvc.getMetadata().getNamespace(),
+        "pvc", pvc.getMetadata().getName());
+    addQuantity(batch, labels, "pvc/request/storage", now,
+        pvc.getSpec().getResources().getRequests(), "storage");
+    if (pvc.getStatus() != null) {
+      addQuantity(batch, labels, "pvc/capacity/storage", now,
+          pvc.getStatus().getCapacity(), "storage");
     }
-    return "";
   }
 
-  public static String fetchPodStorageMetrics(String namespace) throws IOException {
-    // Initialize Kubernetes API client
-    ApiClient client = Config.defaultClient();
-    Configuration.setDefaultApiClient(client);
-    // Use the CoreV1 API to list pods
-    CoreV1Api api = new CoreV1Api();
+  // Runs fn once per namespace, or once with null (all namespaces) for an empty set
+  private static void forEachNamespace(Set<String> namespaces, NamespaceTask fn)
+      throws IOException {
+    if (namespaces.isEmpty()) {
+      fn.run(null);
+      return;
+    }
+    for (String namespace : namespaces) {
+      fn.run(namespace);
+    }
+  }
+
+  // Follows continue tokens until the server reports the last page. Each page request is
+  // retried on its own, and only a fetched page is handed on, so a retry never emits duplicates.
+  // An expired token (410 Gone) fails the listing rather than silently restarting it.
+  private static <L> void forEachPage(String resource, CollectionEngine engine,
+      PageFetch<L> fetch, PageHandler<L> handler) throws IOException {
+    String continueToken = null;
+    do {
+      String token = continueToken;
+      L page = call(engine, CollectionEngine.KUBERNETES, "list/" + resource,
+          "listing " + resource, () -> fetch.fetch(token));
+      continueToken = handler.accept(page);
+    } while (continueToken != null && !continueToken.isEmpty());
+  }
+
+  private static void emit(SampleSink sink, BatchFiller filler) throws IOException {
+    SampleBatch batch = SampleBatch.acquire();
     try {
-      V1PersistentVolumeClaimList pvcList = api.listNamespacedPersistentVolumeClaim(namespace)
-          .execute();
-      StringBuilder builder = new StringBuilder();
-
-      for (V1PersistentVolumeClaim pvc : pvcList.getItems()) {
-        String pvcName = pvc.getMetadata().getName();
-        String storageRequested = pvc.getSpec().getResources().getRequests().get("storage")
-            .getNumber().toString();
-        String storageUsed = pvc.getStatus().getCapacity().get("storage").getNumber().toString();
-
-        builder.append("PVC Name: ").append(pvcName).append("\n");
-        builder.append("Storage Requested: ").append(storageRequested).append("\n");
-        builder.append("Storage Used: ").append(storageUsed).append("\n");
-        builder.append("------\n");
-      }
-      return builder.toString();
+      filler.fill(batch);
+      sink.accept(batch);
+    } finally {
+      SampleBatch.release(batch);
+    }
+  }
 
-    } catch (ApiException e) {
-      System.err.println("Error fetching storage metrics: " + e.getMessage());
-      e.printStackTrace();
+  private static void addQuantity(SampleBatch batch, LabelSet labels, String metric,
+      long timestampMillis, Map<String, Quantity> quantities, String resource) {
+    if (quantities != null && quantities.get(resource) != null) {
+      batch.add(labels, metric, timestampMillis,
+          quantities.get(resource).getNumber().doubleValue());
     }
-    return "";
+  }
+
+  @FunctionalInterface
+  private interface NamespaceTask {
+
+    void run(String namespace) throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface PageFetch<L> {
+
+    L fetch(String continueToken) throws ApiException;
+  }
+
+  // Processes one page, returning the continue token for the next one
+  @FunctionalInterface
+  private interface PageHandler<L> {
+
+    String accept(L page) throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface BatchFiller {
+
+    void fill(SampleBatch batch);
   }
 }
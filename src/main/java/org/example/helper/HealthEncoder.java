@@ -0,0 +1,11 @@
+package org.example.helper;
+
+import java.io.IOException;
+
+// Serializes instance health samples onto an output stream in one OutputFormat, one row per
+// label set (instance, zone, status) with a value per metric column. finish() writes any
+// buffered rows and trailers but leaves the underlying stream open for its owner to commit.
+public interface HealthEncoder extends SampleSink {
+
+  void finish() throws IOException;
+}
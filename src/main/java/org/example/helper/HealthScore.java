@@ -0,0 +1,56 @@
+package org.example.helper;
+
+import java.time.Duration;
+
+// Per-instance health in [0, 1] computed from the TimeSeriesStore rather than extra API calls:
+// 1 minus the higher of the CPU load (average of its EWMA and window peak) and the memory load
+// (EWMA of RAM used over the latest RAM size). NaN until an instance has a CPU sample.
+public class HealthScore {
+
+  public static final String COLUMN = "health/score";
+
+  private static final int CPU = Symbols.intern("cpu/utilization");
+  private static final int RAM_USED = Symbols.intern("memory/balloon/ram_used");
+  private static final int RAM_SIZE = Symbols.intern("memory/balloon/ram_size");
+  private static final int SCORE_METRIC = Symbols.intern(COLUMN);
+
+  // Records every batch in the store and passes it on with a score sample after each
+  // instance's samples, so the score lands in the same row when the batch is encoded
+  public static SampleSink scoring(TimeSeriesStore store, Duration window,
+      SampleSink downstream) {
+    return batch -> {
+      store.accept(batch);
+      SampleBatch scored = SampleBatch.acquire();
+      try {
+        int start = 0;
+        while (start < batch.size()) {
+          LabelSet labels = batch.labels(start);
+          int end = start;
+          for (; end < batch.size() && batch.labels(end) == labels; end++) {
+            scored.add(labels, batch.metric(end), batch.timestamp(end), batch.value(end));
+          }
+          long now = batch.timestamp(start);
+          scored.add(labels, SCORE_METRIC, now, score(store, labels, now, window));
+          start = end;
+        }
+        downstream.accept(scored);
+      } finally {
+        SampleBatch.release(scored);
+      }
+    };
+  }
+
+  static double score(TimeSeriesStore store, LabelSet labels, long now, Duration window) {
+    TimeSeriesStore.Aggregates cpuStats = store.aggregates(labels, CPU, now, window);
+    if (cpuStats == null) {
+      return Double.NaN;
+    }
+    double load = (cpuStats.ewma() + cpuStats.peak()) / 2;
+    TimeSeriesStore.Aggregates used = store.aggregates(labels, RAM_USED, now, window);
+    TimeSeriesStore.Aggregates size = store.aggregates(labels, RAM_SIZE, now, window);
+    if (used != null && size != null && size.last() > 0) {
+      load = Math.max(load, used.ewma() / size.last());
+    }
+    return Math.min(1.0, Math.max(0.0, 1.0 - load));
+  }
+}
@@ -0,0 +1,181 @@
+package org.example.helper;
+
+import com.google.api.gax.httpjson.HttpJsonCallContext;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.cloud.compute.v1.AggregatedListInstancesRequest;
+import com.google.cloud.compute.v1.Instance;
+import com.google.cloud.compute.v1.InstanceAggregatedList;
+import com.google.cloud.compute.v1.InstancesClient;
+import com.google.cloud.compute.v1.InstancesScopedList;
+import com.google.cloud.compute.v1.Warning;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every Compute Engine instance in a project (id, name, zone, status and preemptibility), listed
+// across all zones with paged instances.aggregatedList calls. A field mask keeps the rest of each
+// Instance (disks, metadata, network interfaces, ...) off the wire. Snapshots are kept between
+// cycles and only re-listed once older than the refresh interval, or when a metric query returns
+// an instance the snapshot does not know about.
+public class InstanceInventory {
+
+  // Partial-response mask, sent as the X-Goog-FieldMask system parameter
+  static final String FIELD_MASK = "nextPageToken,"
+      + "items.*.instances(id,name,zone,status,scheduling.preemptible),items.*.warning.code";
+  private static final int PAGE_SIZE = 500;
+
+  private static InstanceInventory shared;
+
+  private final long refreshIntervalNanos;
+  private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+  public InstanceInventory(Duration refreshInterval) {
+    this.refreshIntervalNanos = refreshInterval.toNanos();
+  }
+
+  public static synchronized InstanceInventory shared() {
+    if (shared == null) {
+      shared = new InstanceInventory(Duration.ofMinutes(10));
+    }
+    return shared;
+  }
+
+  public static synchronized void setShared(InstanceInventory inventory) {
+    shared = inventory;
+  }
+
+  // The cached snapshot, re-listed first if it is older than the refresh interval
+  public Snapshot snapshot(String projectId, CollectionEngine engine) throws IOException {
+    Snapshot current = snapshots.get(projectId);
+    if (current != null && System.nanoTime() - current.listedAtNanos < refreshIntervalNanos) {
+      return current;
+    }
+    return refresh(projectId, engine, current);
+  }
+
+  // Called when metrics arrived for instances unknown to seen. Re-lists unless another caller
+  // has already replaced seen. Ids still missing afterwards belong to deleted instances whose
+  // points are still within the query window; they are retired so they don't force another
+  // listing every cycle.
+  public Snapshot refreshForUnknown(String projectId, Snapshot seen,
+      Collection<Long> unknownIds, CollectionEngine engine) throws IOException {
+    Snapshot current = snapshots.get(projectId);
+    if (current == null || current == seen) {
+      current = refresh(projectId, engine, seen);
+    }
+    for (long id : unknownIds) {
+      if (!current.byId.containsKey(id)) {
+        current.retired.add(id);
+      }
+    }
+    return current;
+  }
+
+  public void invalidate() {
+    snapshots.clear();
+  }
+
+  // Concurrent refreshes collapse into a single listing
+  private synchronized Snapshot refresh(String projectId, CollectionEngine engine, Snapshot stale)
+      throws IOException {
+    Snapshot current = snapshots.get(projectId);
+    if (current != null && current != stale) {
+      return current;
+    }
+    Snapshot listed;
+    try (Telemetry.Timer timer = Telemetry.shared().time("gce_inventory")) {
+      listed = list(projectId, engine);
+    }
+    snapshots.put(projectId, listed);
+    return listed;
+  }
+
+  private static Snapshot list(String projectId, CollectionEngine engine) throws IOException {
+    InstancesClient client = ClientRegistry.shared().instances();
+    ApiCallContext context = HttpJsonCallContext.createDefault()
+        .withExtraHeaders(Map.of("X-Goog-FieldMask", List.of(FIELD_MASK)));
+    AggregatedListInstancesRequest request = AggregatedListInstancesRequest.newBuilder()
+        .setProject(projectId)
+        .setMaxResults(PAGE_SIZE)
+        .setReturnPartialSuccess(true)
+        .build();
+
+    Map<Long, InventoryInstance> byId = new HashMap<>();
+    Map<String, List<InventoryInstance>> byZone = new TreeMap<>();
+    Set<String> unreachableZones = new TreeSet<>();
+    String pageToken = "";
+    // Pages are fetched (and retried) one at a time, so a retry never restarts the listing
+    do {
+      AggregatedListInstancesRequest pageRequest = request.toBuilder()
+          .setPageToken(pageToken).build();
+      InstanceAggregatedList page;
+      try {
+        page = engine.call(CollectionEngine.COMPUTE, "instances.aggregatedList",
+            () -> client.aggregatedListCallable().call(pageRequest, context));
+      } catch (IOException | RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException("Error listing instances in " + projectId, e);
+      }
+      for (Map.Entry<String, InstancesScopedList> scope : page.getItemsMap().entrySet()) {
+        // Scopes are keyed "zones/<zone>"
+        String zone = scope.getKey().substring(scope.getKey().lastIndexOf('/') + 1);
+        InstancesScopedList scoped = scope.getValue();
+        if (scoped.hasWarning()
+            && Warning.Code.UNREACHABLE.name().equals(scoped.getWarning().getCode())) {
+          unreachableZones.add(zone);
+        }
+        for (Instance instance : scoped.getInstancesList()) {
+          InventoryInstance entry = new InventoryInstance(instance.getId(), instance.getName(),
+              zone, instance.getStatus(), instance.getScheduling().getPreemptible());
+          byId.put(entry.id(), entry);
+          byZone.computeIfAbsent(zone, key -> new ArrayList<>()).add(entry);
+        }
+      }
+      pageToken = page.getNextPageToken();
+    } while (!pageToken.isEmpty());
+    return new Snapshot(byId, byZone, unreachableZones, ConcurrentHashMap.newKeySet(),
+        System.nanoTime());
+  }
+
+  public record InventoryInstance(long id, String name, String zone, String status,
+      boolean preemptible) {
+
+  }
+
+  // Immutable once listed apart from retired ids; zones are kept sorted by name
+  public record Snapshot(Map<Long, InventoryInstance> byId,
+      Map<String, List<InventoryInstance>> byZone, Set<String> unreachableZones,
+      Set<Long> retired, long listedAtNanos) {
+
+    public boolean isKnown(long instanceId) {
+      return byId.containsKey(instanceId) || retired.contains(instanceId);
+    }
+
+    public List<InventoryInstance> instancesIn(String zone) {
+      return byZone.getOrDefault(zone, List.of());
+    }
+
+    // Zones of the region with at least one preemptible instance. Zone names are
+    // "<region>-<suffix>".
+    public List<String> preemptibleZonesIn(String region) {
+      return byZone.entrySet().stream()
+          .filter(entry -> entry.getKey().startsWith(region + "-"))
+          .filter(entry -> entry.getValue().stream().anyMatch(InventoryInstance::preemptible))
+          .map(Map.Entry::getKey)
+          .toList();
+    }
+
+    public List<String> unreachableZonesIn(String region) {
+      return unreachableZones.stream().filter(zone -> zone.startsWith(region + "-")).toList();
+    }
+  }
+}
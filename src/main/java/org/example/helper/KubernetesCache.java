@@ -0,0 +1,133 @@
+package org.example.helper;
+
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.informer.cache.Lister;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1Node;
+import io.kubernetes.client.openapi.models.V1NodeList;
+import io.kubernetes.client.openapi.models.V1PersistentVolumeClaim;
+import io.kubernetes.client.openapi.models.V1PersistentVolumeClaimList;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodList;
+import io.kubernetes.client.util.Config;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Watch-backed, in-memory copy of the cluster's pods, nodes and PVCs. Each informer does one
+// full LIST when started and then only receives watch events, so collections read the local
+// stores instead of listing from the API server. Stores are indexed by namespace.
+public class KubernetesCache implements AutoCloseable {
+
+  private static final Duration SYNC_TIMEOUT = Duration.ofMinutes(2);
+  private static KubernetesCache shared;
+
+  private final SharedInformerFactory factory;
+  private final SharedIndexInformer<V1Pod> podInformer;
+  private final SharedIndexInformer<V1Node> nodeInformer;
+  private final SharedIndexInformer<V1PersistentVolumeClaim> pvcInformer;
+  private boolean started;
+
+  public KubernetesCache(ApiClient client) {
+    CoreV1Api api = new CoreV1Api(client);
+    factory = new SharedInformerFactory(client);
+    podInformer = factory.sharedIndexInformerFor(params -> api.listPodForAllNamespaces()
+            .resourceVersion(params.resourceVersion)
+            .timeoutSeconds(params.timeoutSeconds)
+            .watch(params.watch)
+            .buildCall(null),
+        V1Pod.class, V1PodList.class);
+    nodeInformer = factory.sharedIndexInformerFor(params -> api.listNode()
+            .resourceVersion(params.resourceVersion)
+            .timeoutSeconds(params.timeoutSeconds)
+            .watch(params.watch)
+            .buildCall(null),
+        V1Node.class, V1NodeList.class);
+    pvcInformer = factory.sharedIndexInformerFor(
+        params -> api.listPersistentVolumeClaimForAllNamespaces()
+            .resourceVersion(params.resourceVersion)
+            .timeoutSeconds(params.timeoutSeconds)
+            .watch(params.watch)
+            .buildCall(null),
+        V1PersistentVolumeClaim.class, V1PersistentVolumeClaimList.class);
+  }
+
+  // Started on first use and stopped at shutdown
+  public static synchronized KubernetesCache shared() throws IOException {
+    if (shared == null) {
+      shared = new KubernetesCache(watchClient());
+      Runtime.getRuntime()
+          .addShutdownHook(new Thread(shared::close, "kubernetes-cache-shutdown"));
+    }
+    shared.start();
+    return shared;
+  }
+
+  // Watches are long-lived requests, so they get their own client without a read timeout
+  public static ApiClient watchClient() throws IOException {
+    ApiClient client = Config.defaultClient();
+    client.setHttpClient(client.getHttpClient().newBuilder()
+        .readTimeout(0, TimeUnit.SECONDS)
+        .build());
+    return client;
+  }
+
+  // Starts the informers and blocks until each has completed its initial LIST
+  public synchronized void start() throws IOException {
+    if (started) {
+      return;
+    }
+    factory.startAllRegisteredInformers();
+    long deadline = System.nanoTime() + SYNC_TIMEOUT.toNanos();
+    while (!podInformer.hasSynced() || !nodeInformer.hasSynced() || !pvcInformer.hasSynced()) {
+      if (System.nanoTime() > deadline) {
+        factory.stopAllRegisteredInformers();
+        throw new IOException("Timed out waiting for Kubernetes informers to sync");
+      }
+      try {
+        TimeUnit.MILLISECONDS.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        factory.stopAllRegisteredInformers();
+        throw new IOException("Interrupted while waiting for Kubernetes informers to sync", e);
+      }
+    }
+    started = true;
+  }
+
+  public List<V1Pod> pods(String namespace) {
+    return new Lister<>(podInformer.getIndexer()).namespace(namespace).list();
+  }
+
+  public List<V1Pod> pods() {
+    return podInformer.getIndexer().list();
+  }
+
+  // Lookups by name, or null when the object is not (or no longer) in the cluster
+  public V1Pod pod(String namespace, String name) {
+    return podInformer.getIndexer().getByKey(namespace + "/" + name);
+  }
+
+  public V1Node node(String name) {
+    return nodeInformer.getIndexer().getByKey(name);
+  }
+
+  public List<V1Node> nodes() {
+    return nodeInformer.getIndexer().list();
+  }
+
+  public List<V1PersistentVolumeClaim> persistentVolumeClaims(String namespace) {
+    return new Lister<>(pvcInformer.getIndexer()).namespace(namespace).list();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (started) {
+      factory.stopAllRegisteredInformers();
+      started = false;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package org.example.helper;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+// Immutable, interned set of label key/value pairs identifying a resource or series. Equal sets
+// are the same instance, so collectors can compare them with == and samples only hold a
+// reference. Interning is weak: once nothing refers to a set (e.g. the instance or pod it named
+// is gone from every batch, store and tracker) it is garbage collected, so a long-running daemon
+// doesn't accumulate the label sets of every instance it has ever seen. Keys are Symbols, which
+// are drawn from a small fixed vocabulary; values are kept as plain strings for the same reason.
+public final class LabelSet {
+
+  private static final Map<LabelSet, WeakReference<LabelSet>> interned = new WeakHashMap<>();
+
+  // Key symbol ids sorted by key name, and the value of each key
+  private final int[] keys;
+  private final String[] values;
+  private final int hash;
+
+  private LabelSet(int[] keys, String[] values) {
+    this.keys = keys;
+    this.values = values;
+    this.hash = 31 * Arrays.hashCode(keys) + Arrays.hashCode(values);
+  }
+
+  public static LabelSet of(String... keyValues) {
+    Map<String, String> labels = new TreeMap<>();
+    for (int i = 0; i + 1 < keyValues.length; i += 2) {
+      labels.put(keyValues[i], keyValues[i + 1]);
+    }
+    return of(labels);
+  }
+
+  public static LabelSet of(Map<String, String> labels) {
+    Map<String, String> sorted = labels instanceof TreeMap ? labels : new TreeMap<>(labels);
+    int[] keys = new int[sorted.size()];
+    String[] values = new String[sorted.size()];
+    int i = 0;
+    for (Map.Entry<String, String> label : sorted.entrySet()) {
+      keys[i] = Symbols.intern(label.getKey());
+      values[i++] = label.getValue();
+    }
+    return intern(new LabelSet(keys, values));
+  }
+
+  private static LabelSet intern(LabelSet candidate) {
+    synchronized (interned) {
+      WeakReference<LabelSet> existing = interned.get(candidate);
+      LabelSet labels = existing != null ? existing.get() : null;
+      if (labels == null) {
+        labels = candidate;
+        interned.put(candidate, new WeakReference<>(candidate));
+      }
+      return labels;
+    }
+  }
+
+  // This set plus (or with a replaced) key=value
+  public LabelSet with(String key, String value) {
+    Map<String, String> labels = new TreeMap<>();
+    for (int i = 0; i < size(); i++) {
+      labels.put(key(i), value(i));
+    }
+    labels.put(key, value);
+    return of(labels);
+  }
+
+  public String get(String key) {
+    for (int i = 0; i < keys.length; i++) {
+      if (Symbols.name(keys[i]).equals(key)) {
+        return values[i];
+      }
+    }
+    return "";
+  }
+
+  public int size() {
+    return keys.length;
+  }
+
+  public String key(int index) {
+    return Symbols.name(keys[index]);
+  }
+
+  public String value(int index) {
+    return values[index];
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof LabelSet other && hash == other.hash
+        && Arrays.equals(keys, other.keys) && Arrays.equals(values, other.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    for (int i = 0; i < size(); i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append(key(i)).append('=').append(value(i));
+    }
+    return builder.append('}').toString();
+  }
+}
@@ -0,0 +1,64 @@
+package org.example.helper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// The original InstanceHealth.csv layout: every instance of a zone concatenated on one line
+public class LegacyHealthEncoder implements HealthEncoder {
+
+  private final OutputStream out;
+  private final List<String> columns;
+  private final int[] columnIds;
+  private final StringBuilder line = new StringBuilder();
+  private String zone;
+  private boolean firstLine = true;
+
+  public LegacyHealthEncoder(OutputStream out, List<String> columns) {
+    this.out = out;
+    this.columns = columns;
+    this.columnIds = SampleBatch.columns(columns);
+  }
+
+  public static StringBuilder format(LabelSet labels, double[] values, List<String> columns,
+      StringBuilder builder) {
+    builder.append("instance:").append(labels.get("instance"))
+        .append(",zone:").append(labels.get("zone"))
+        .append(",status:").append(labels.get("status"));
+    for (int i = 0; i < columns.size(); i++) {
+      builder.append(",").append(columns.get(i)).append(":").append(values[i]);
+    }
+    return builder;
+  }
+
+  @Override
+  public void accept(SampleBatch batch) throws IOException {
+    batch.forEachRow(columnIds, (labels, values) -> {
+      String rowZone = labels.get("zone");
+      if (zone != null && !zone.equals(rowZone)) {
+        flushLine();
+      }
+      zone = rowZone;
+      format(labels, values, columns, line);
+    });
+  }
+
+  @Override
+  public void finish() throws IOException {
+    flushLine();
+    out.flush();
+  }
+
+  private void flushLine() throws IOException {
+    if (line.isEmpty()) {
+      return;
+    }
+    if (!firstLine) {
+      out.write('\n');
+    }
+    firstLine = false;
+    out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+    line.setLength(0);
+  }
+}
@@ -0,0 +1,158 @@
+package org.example.helper;
+
+import com.google.api.MetricDescriptor;
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide cache of metric descriptors keyed by project and metric type. Built-in
+// descriptors practically never change, so entries live for a long TTL and can be persisted to
+// a local file so a cold start skips the lookups entirely.
+public class MetricDescriptorCache {
+
+  private static final MetricDescriptorCache shared = new MetricDescriptorCache(
+      Duration.ofHours(24), 1024);
+
+  private final long ttlMillis;
+  private final int maxEntries;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<Entry>> lookups = new ConcurrentHashMap<>();
+
+  public MetricDescriptorCache(Duration ttl, int maxEntries) {
+    this.ttlMillis = ttl.toMillis();
+    this.maxEntries = maxEntries;
+  }
+
+  public static MetricDescriptorCache shared() {
+    return shared;
+  }
+
+  public boolean isFresh(String projectId, String metricName) {
+    Entry entry = entries.get(key(projectId, metricName));
+    return entry != null && isFresh(entry, System.currentTimeMillis());
+  }
+
+  // Concurrent misses for the same key are collapsed into a single getMetricDescriptor call. The
+  // call runs outside any map operation, so a slow lookup never blocks other keys.
+  public MetricDescriptor get(String projectId, String metricName, MetricServiceClient client) {
+    String key = key(projectId, metricName);
+    Entry cached = entries.get(key);
+    if (cached != null && isFresh(cached, System.currentTimeMillis())) {
+      return cached.descriptor;
+    }
+    CompletableFuture<Entry> lookup = new CompletableFuture<>();
+    CompletableFuture<Entry> running = lookups.putIfAbsent(key, lookup);
+    if (running != null) {
+      return join(running).descriptor;
+    }
+    try {
+      Entry entry = entries.get(key);
+      if (entry == null || !isFresh(entry, System.currentTimeMillis())) {
+        MetricDescriptor descriptor = client.getMetricDescriptor(
+            String.format("projects/%s/metricDescriptors/%s", projectId, metricName));
+        entry = new Entry(descriptor, System.currentTimeMillis());
+        entries.put(key, entry);
+      }
+      lookup.complete(entry);
+      evictOverflow();
+      return entry.descriptor;
+    } catch (RuntimeException e) {
+      lookup.completeExceptionally(e);
+      throw e;
+    } finally {
+      lookups.remove(key, lookup);
+    }
+  }
+
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  // Restores previously saved descriptors, skipping any that have already expired
+  public void load(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return;
+    }
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    long now = System.currentTimeMillis();
+    for (String key : properties.stringPropertyNames()) {
+      String value = properties.getProperty(key);
+      int separator = value.indexOf(':');
+      if (separator < 0) {
+        continue;
+      }
+      Entry entry = new Entry(
+          MetricDescriptor.parseFrom(Base64.getDecoder().decode(value.substring(separator + 1))),
+          Long.parseLong(value.substring(0, separator)));
+      if (isFresh(entry, now)) {
+        entries.putIfAbsent(key, entry);
+      }
+    }
+    evictOverflow();
+  }
+
+  public synchronized void save(Path file) throws IOException {
+    Properties properties = new Properties();
+    entries.forEach((key, entry) -> properties.setProperty(key,
+        entry.fetchedAtMillis + ":" + Base64.getEncoder()
+            .encodeToString(entry.descriptor.toByteArray())));
+
+    // Write next to the target and move into place so a crash never leaves a torn file
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      properties.store(writer, "Metric descriptor cache");
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private boolean isFresh(Entry entry, long now) {
+    return now - entry.fetchedAtMillis < ttlMillis;
+  }
+
+  private void evictOverflow() {
+    while (entries.size() > maxEntries) {
+      entries.entrySet().stream()
+          .min(Comparator.comparingLong(e -> e.getValue().fetchedAtMillis))
+          .ifPresent(oldest -> entries.remove(oldest.getKey(), oldest.getValue()));
+    }
+  }
+
+  private static Entry join(CompletableFuture<Entry> lookup) {
+    try {
+      return lookup.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private static String key(String projectId, String metricName) {
+    return projectId + "/" + metricName;
+  }
+
+  private record Entry(MetricDescriptor descriptor, long fetchedAtMillis) {
+
+  }
+}
@@ -0,0 +1,38 @@
+package org.example.helper;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// Serves Telemetry.shared() in the Prometheus text format at http://<host>:<port>/metrics.
+// Scrapes are rare and cheap, so they are handled on the server's single dispatcher thread.
+public class MetricsServer implements AutoCloseable {
+
+  private final HttpServer server;
+
+  public MetricsServer(int port) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.createContext("/metrics", MetricsServer::handle);
+    server.start();
+    System.out.println("Serving collector metrics on port " + server.getAddress().getPort());
+  }
+
+  private static void handle(HttpExchange exchange) throws IOException {
+    StringBuilder body = new StringBuilder();
+    Telemetry.shared().writePrometheus(body);
+    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+}
@@ -1,14 +1,10 @@
 package org.example.helper;
 
-import com.google.api.gax.rpc.ApiException;
-import com.google.cloud.monitoring.v3.MetricServiceClient;
-import com.google.monitoring.v3.ListTimeSeriesRequest;
-import com.google.monitoring.v3.ProjectName;
-import com.google.monitoring.v3.TimeInterval;
-import com.google.monitoring.v3.TimeSeries;
-import com.google.protobuf.Duration;
-import com.google.protobuf.Timestamp;
+import com.google.monitoring.v3.Aggregation;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 
 /*
 * gcloud container clusters update mohitshr-auto-cluster1 \
@@ -19,164 +15,95 @@ import java.io.IOException;
 
 public class MonitoringHelper {
 
-  public static void fetchIngressBytesCount(String projectId, String clusterName) {
-    try {
-      try (MetricServiceClient client = MetricServiceClient.create()) {
-        // Define the time interval for the last hour
-        long now = System.currentTimeMillis();
-        Timestamp endTime = Timestamp.newBuilder().setSeconds(now / 1000).setNanos(0).build();
-        Timestamp startTime = Timestamp.newBuilder().setSeconds((now - 300000) / 1000).build();
-
-        // Create the request to list time series
-        ListTimeSeriesRequest request = ListTimeSeriesRequest.newBuilder()
-            .setName(ProjectName.of(projectId).toString())
-            .setFilter(String.format(
-                "metric.type=\"networking.googleapis.com/pod_flow/ingress_bytes_count\" AND "
-                    + "resource.type=\"k8s_pod\" AND "
-                    + "resource.label.\"project_id\"=\"%s\" AND "
-                    + "resource.label.\"cluster_name\"=\"%s\"",
-                projectId, clusterName))
-            .setInterval(
-                TimeInterval.newBuilder().setStartTime(startTime).setEndTime(endTime).build())
-            .setView(ListTimeSeriesRequest.TimeSeriesView.FULL)
-            .setAggregation(com.google.monitoring.v3.Aggregation.newBuilder()
-                .setPerSeriesAligner(com.google.monitoring.v3.Aggregation.Aligner.ALIGN_RATE)
-                .setCrossSeriesReducer(com.google.monitoring.v3.Aggregation.Reducer.REDUCE_SUM)
-                .setAlignmentPeriod(Duration.newBuilder().setSeconds(10).build())
-                .build())
-            .build();
-
-        // Fetch and print the time series data
-        for (TimeSeries timeSeries : client.listTimeSeries(request).iterateAll()) {
-          System.out.println("Metric: " + timeSeries.getMetric());
-          for (var point : timeSeries.getPointsList()) {
-            System.out.printf("Ingress Bytes Count: %f at %s%n", point.getValue().getDoubleValue(),
-                point.getInterval().getEndTime());
-          }
-        }
-      }
-    } catch (IOException | ApiException e) {
-      System.err.println("Error fetching ingress bytes count: " + e.getMessage());
-      e.printStackTrace();
-    }
+  // Monitoring rejects alignment periods under a minute, so every spec aligns to at least 60s
+  public static QuerySpec ingressBytesCountSpec(String projectId, String clusterName) {
+    return QuerySpec.of("networking.googleapis.com/pod_flow/ingress_bytes_count", "k8s_pod",
+            clusterFilters(projectId, clusterName), Aggregation.Aligner.ALIGN_RATE,
+            Duration.ofSeconds(60), Duration.ofMinutes(5))
+        .withReducer(Aggregation.Reducer.REDUCE_SUM);
+  }
+
+  public static QuerySpec egressBytesCountSpec(String projectId, String clusterName) {
+    return QuerySpec.of("networking.googleapis.com/pod_flow/egress_bytes_count", "k8s_pod",
+            clusterFilters(projectId, clusterName), Aggregation.Aligner.ALIGN_RATE,
+            Duration.ofSeconds(60), Duration.ofMinutes(5))
+        .withReducer(Aggregation.Reducer.REDUCE_SUM);
+  }
+
+  public static QuerySpec containerCpuUsageSpec(String projectId, String clusterName) {
+    return QuerySpec.of("kubernetes.io/container/cpu/usage_time", "k8s_container",
+        clusterFilters(projectId, clusterName), Aggregation.Aligner.ALIGN_RATE,
+        Duration.ofSeconds(60), Duration.ofHours(1));
+  }
+
+  // memory/usage_bytes is a GAUGE, which ALIGN_RATE rejects, so it is averaged instead
+  public static QuerySpec containerMemoryUsageSpec(String projectId, String clusterName) {
+    return QuerySpec.of("kubernetes.io/container/memory/usage_bytes", "k8s_container",
+        clusterFilters(projectId, clusterName), Aggregation.Aligner.ALIGN_MEAN,
+        Duration.ofSeconds(60), Duration.ofHours(1));
+  }
+
+  public static List<QuerySpec> clusterSpecs(String projectId, String clusterName) {
+    return List.of(
+        ingressBytesCountSpec(projectId, clusterName),
+        egressBytesCountSpec(projectId, clusterName),
+        containerCpuUsageSpec(projectId, clusterName),
+        containerMemoryUsageSpec(projectId, clusterName));
+  }
+
+  // Runs every cluster query concurrently, streaming each request's points into the sink
+  public static PartialResults fetchClusterMetrics(String projectId, String clusterName,
+      CollectionEngine engine, SampleSink sink) throws IOException {
+    return MonitoringQueryEngine.run(projectId, clusterSpecs(projectId, clusterName), engine,
+        sink);
+  }
+
+  public static SampleBatch fetchIngressBytesCount(String projectId, String clusterName) {
+    return fetch(projectId, List.of(ingressBytesCountSpec(projectId, clusterName)),
+        "ingress bytes count");
   }
 
-  public static void fetchEgressBytesCount(String projectId, String clusterName) {
+  public static SampleBatch fetchEgressBytesCount(String projectId, String clusterName) {
+    return fetch(projectId, List.of(egressBytesCountSpec(projectId, clusterName)),
+        "egress bytes count");
+  }
+
+  public static SampleBatch fetchGkeMetrics(String projectId, String clusterName) {
+    return fetch(projectId, gkeSpecs(projectId, clusterName), "GKE metrics");
+  }
+
+  // The same series collectMonitoring publishes incrementally, so this reads their whole window
+  // against detached watermarks: marking the points as seen here would keep the next monitoring
+  // cycle from publishing them
+  public static SampleBatch fetchGkeMetrics(String projectId, String clusterName,
+      CollectionEngine engine) throws IOException {
+    SampleBatch batch = SampleBatch.acquire();
     try {
-      try (MetricServiceClient client = MetricServiceClient.create()) {
-        // Define the time interval for the last hour
-        long now = System.currentTimeMillis();
-        Timestamp endTime = Timestamp.newBuilder().setSeconds(now / 1000).setNanos(0).build();
-        Timestamp startTime = Timestamp.newBuilder().setSeconds((now - 300000) / 1000).build();
-
-        // Create the request to list time series
-        ListTimeSeriesRequest request = ListTimeSeriesRequest.newBuilder()
-            .setName(ProjectName.of(projectId).toString())
-            .setFilter(String.format(
-                "metric.type=\"networking.googleapis.com/pod_flow/egress_bytes_count\" AND "
-                    + "resource.type=\"k8s_pod\" AND "
-                    + "resource.label.\"project_id\"=\"%s\" AND "
-                    + "resource.label.\"cluster_name\"=\"%s\"",
-                projectId, clusterName))
-            .setInterval(
-                TimeInterval.newBuilder().setStartTime(startTime).setEndTime(endTime).build())
-            .setView(ListTimeSeriesRequest.TimeSeriesView.FULL)
-            .setAggregation(com.google.monitoring.v3.Aggregation.newBuilder()
-                .setPerSeriesAligner(com.google.monitoring.v3.Aggregation.Aligner.ALIGN_RATE)
-                .setCrossSeriesReducer(com.google.monitoring.v3.Aggregation.Reducer.REDUCE_SUM)
-                .setAlignmentPeriod(Duration.newBuilder().setSeconds(10).build())
-                .build())
-            .build();
-
-        // Fetch and print the time series data
-        for (TimeSeries timeSeries : client.listTimeSeries(request).iterateAll()) {
-          System.out.println("Metric: " + timeSeries.getMetric());
-          for (var point : timeSeries.getPointsList()) {
-            System.out.printf("Egress Bytes Count: %f at %s%n", point.getValue().getDoubleValue(),
-                point.getInterval().getEndTime());
-          }
-        }
-      }
-    } catch (IOException | ApiException e) {
-      System.err.println("Error fetching egress bytes count: " + e.getMessage());
-      e.printStackTrace();
+      MonitoringQueryEngine.run(projectId, gkeSpecs(projectId, clusterName), engine,
+          Watermarks.shared().detached(), batch::addAll).report("GKE metrics");
+      return batch;
+    } catch (IOException | RuntimeException e) {
+      SampleBatch.release(batch);
+      throw e;
     }
   }
 
-  public static void fetchGkeMetrics(String projectId, String clusterName) {
-    try {
+  private static List<QuerySpec> gkeSpecs(String projectId, String clusterName) {
+    return List.of(containerCpuUsageSpec(projectId, clusterName),
+        containerMemoryUsageSpec(projectId, clusterName));
+  }
 
-      try (MetricServiceClient client = MetricServiceClient.create()) {
-        // Define the time interval for the last hour
-        long now = System.currentTimeMillis();
-        Timestamp endTime = Timestamp.newBuilder().setSeconds(now / 1000).setNanos(0).build();
-        Timestamp startTime = Timestamp.newBuilder().setSeconds((now - 3600000) / 1000).setNanos(0)
-            .build();
-
-        // Create the request to list time series for CPU usage
-        ListTimeSeriesRequest cpuRequest = ListTimeSeriesRequest.newBuilder()
-            .setName(ProjectName.of(projectId).toString())
-            .setFilter(String.format(
-                "metric.type=\"kubernetes.io/container/cpu/usage_time\" AND "
-                    + "resource.type=\"k8s_container\" AND "
-                    + "resource.label.\"project_id\"=\"%s\" AND "
-                    + "resource.label.\"cluster_name\"=\"%s\"",
-                projectId, clusterName))
-            .setInterval(
-                TimeInterval.newBuilder().setStartTime(startTime).setEndTime(endTime).build())
-            .setView(ListTimeSeriesRequest.TimeSeriesView.FULL)
-            .setAggregation(com.google.monitoring.v3.Aggregation.newBuilder()
-                .setPerSeriesAligner(com.google.monitoring.v3.Aggregation.Aligner.ALIGN_RATE)
-                .setAlignmentPeriod(Duration.newBuilder().setSeconds(60)
-                    .build()) // Set alignment period to 60 seconds
-                .build())
-            .build();
-
-        // Fetch and print CPU usage metrics
-        System.out.println("Fetching CPU usage metrics...");
-        for (TimeSeries timeSeries : client.listTimeSeries(cpuRequest).iterateAll()) {
-          System.out.println("Metric: " + timeSeries.getMetric());
-          for (var point : timeSeries.getPointsList()) {
-            System.out.printf("CPU Usage: %f at %s%n", point.getValue().getDoubleValue(),
-                point.getInterval().getEndTime());
-          }
-        }
-
-        // Create the request to list time series for Memory usage
-        ListTimeSeriesRequest memoryRequest = ListTimeSeriesRequest.newBuilder()
-            .setName(ProjectName.of(projectId).toString())
-            .setFilter(String.format(
-                "metric.type=\"kubernetes.io/container/memory/usage_bytes\" AND "
-                    + "resource.type=\"k8s_container\" AND "
-                    + "resource.label.\"project_id\"=\"%s\" AND "
-                    + "resource.label.\"cluster_name\"=\"%s\"",
-                projectId, clusterName))
-            .setInterval(
-                TimeInterval.newBuilder().setStartTime(startTime).setEndTime(endTime).build())
-            .setView(ListTimeSeriesRequest.TimeSeriesView.FULL)
-            .setAggregation(com.google.monitoring.v3.Aggregation.newBuilder()
-                .setPerSeriesAligner(com.google.monitoring.v3.Aggregation.Aligner.ALIGN_RATE)
-                .setAlignmentPeriod(Duration.newBuilder().setSeconds(60)
-                    .build()) // Set alignment period to 60 seconds
-                .build())
-            .build();
-
-        // Fetch and print Memory usage metrics
-        System.out.println("Fetching Memory usage metrics...");
-        for (TimeSeries timeSeries : client.listTimeSeries(memoryRequest).iterateAll()) {
-          System.out.println("Metric: " + timeSeries.getMetric());
-          for (var point : timeSeries.getPointsList()) {
-            System.out.printf("Memory Usage: %f at %s%n", point.getValue().getDoubleValue(),
-                point.getInterval().getEndTime());
-          }
-        }
-
-      }
-    } catch (IOException | ApiException e) {
-      System.err.println("Error fetching GKE metrics: " + e.getMessage());
-      e.printStackTrace();
+  private static SampleBatch fetch(String projectId, List<QuerySpec> specs, String description) {
+    SampleBatch batch = SampleBatch.acquire();
+    try (CollectionEngine engine = CollectionEngine.withDefaults()) {
+      MonitoringQueryEngine.run(projectId, specs, engine, batch::addAll).report(description);
+    } catch (IOException e) {
+      System.err.println("Error fetching " + description + ": " + e.getMessage());
     }
+    return batch;
   }
 
-
+  private static Map<String, String> clusterFilters(String projectId, String clusterName) {
+    return Map.of("project_id", projectId, "cluster_name", clusterName);
+  }
 }
@@ -0,0 +1,124 @@
+package org.example.helper;
+
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.monitoring.v3.ListTimeSeriesRequest;
+import com.google.monitoring.v3.ProjectName;
+import com.google.monitoring.v3.TimeInterval;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.monitoring.v3.TypedValue;
+import com.google.protobuf.util.Timestamps;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// Runs a list of QuerySpecs against Cloud Monitoring: duplicate specs are dropped and the rest
+// run concurrently, one request each (ListTimeSeries only accepts a single metric type per
+// filter). Each request's new points are handed to the sink as one batch, in the order the specs
+// were given. A request that still fails after retries is recorded in the returned
+// PartialResults and the other requests go ahead.
+public class MonitoringQueryEngine {
+
+  public static PartialResults run(String projectId, List<QuerySpec> specs,
+      CollectionEngine engine, SampleSink sink) throws IOException {
+    return run(projectId, specs, engine, Watermarks.shared(), sink);
+  }
+
+  // Only points newer than watermarks are read, and watermarks advance past them
+  public static PartialResults run(String projectId, List<QuerySpec> specs,
+      CollectionEngine engine, Watermarks watermarks, SampleSink sink) throws IOException {
+    MetricServiceClient client = ClientRegistry.shared().metricService();
+    PartialResults partial = new PartialResults();
+    engine.forEachOrdered(List.copyOf(new LinkedHashSet<>(specs)), spec -> {
+      try {
+        return engine.call(CollectionEngine.MONITORING, "listTimeSeries",
+            () -> fetch(projectId, spec, client, watermarks));
+      } catch (InterruptedException e) {
+        throw e;
+      } catch (Exception e) {
+        partial.record(filter(spec), e);
+        return SampleBatch.acquire();
+      }
+    }, batch -> {
+      try {
+        sink.accept(batch);
+      } finally {
+        SampleBatch.release(batch);
+      }
+    });
+    return partial;
+  }
+
+  static String filter(QuerySpec spec) {
+    StringBuilder filter = new StringBuilder("metric.type=\"").append(spec.metricType())
+        .append("\" AND resource.type=\"").append(spec.resourceType()).append('"');
+    spec.labelFilters().forEach((label, value) -> filter.append(" AND resource.label.\"")
+        .append(label).append("\"=\"").append(value).append('"'));
+    return filter.toString();
+  }
+
+  private static SampleBatch fetch(String projectId, QuerySpec spec,
+      MetricServiceClient client, Watermarks watermarks) {
+    long end = watermarks.closedUntil(System.currentTimeMillis());
+    long start = watermarks.windowStart(spec.scope(), end, spec.window().toMillis());
+
+    ListTimeSeriesRequest request = ListTimeSeriesRequest.newBuilder()
+        .setName(ProjectName.of(projectId).toString())
+        .setFilter(filter(spec))
+        .setInterval(TimeInterval.newBuilder()
+            .setStartTime(Timestamps.fromMillis(start))
+            .setEndTime(Timestamps.fromMillis(end))
+            .build())
+        .setView(ListTimeSeriesRequest.TimeSeriesView.FULL)
+        .setAggregation(spec.aggregation())
+        .build();
+
+    return newPoints(spec.scope(), client.listTimeSeries(request).iterateAll(), end,
+        watermarks);
+  }
+
+  // The points of every series newer than the series watermark, which is advanced past them.
+  // Points ending after end are still open and are left for the next query.
+  static SampleBatch newPoints(String scope, Iterable<TimeSeries> timeSeries, long end,
+      Watermarks watermarks) {
+    SampleBatch batch = SampleBatch.acquire();
+    for (TimeSeries series : timeSeries) {
+      addNewPoints(scope, series, end, watermarks, batch);
+    }
+    return batch;
+  }
+
+  private static void addNewPoints(String scope, TimeSeries timeSeries, long end,
+      Watermarks watermarks, SampleBatch batch) {
+    // LabelSets are sorted by key, so the series key does not depend on the order the API
+    // returns labels in
+    String series = LabelSet.of(timeSeries.getMetric().getLabelsMap()) + "/"
+        + LabelSet.of(timeSeries.getResource().getLabelsMap());
+    long watermark = watermarks.endMillis(scope, series);
+    Map<String, String> labelMap = new HashMap<>(timeSeries.getResource().getLabelsMap());
+    labelMap.putAll(timeSeries.getMetric().getLabelsMap());
+    LabelSet labels = LabelSet.of(labelMap);
+    int metric = Symbols.intern(timeSeries.getMetric().getType());
+    for (var point : timeSeries.getPointsList()) {
+      long endMillis = Timestamps.toMillis(point.getInterval().getEndTime());
+      if (endMillis <= watermark || endMillis > end) {
+        continue;
+      }
+      double value = numericValue(point.getValue());
+      batch.add(labels, metric, endMillis, value);
+      watermarks.advance(scope, series, endMillis, value);
+    }
+  }
+
+  // Reads a point as a double whatever its value type; distributions contribute their mean
+  static double numericValue(TypedValue value) {
+    return switch (value.getValueCase()) {
+      case DOUBLE_VALUE -> value.getDoubleValue();
+      case INT64_VALUE -> value.getInt64Value();
+      case BOOL_VALUE -> value.getBoolValue() ? 1.0 : 0.0;
+      case DISTRIBUTION_VALUE -> value.getDistributionValue().getMean();
+      default -> 0.0;
+    };
+  }
+}
@@ -0,0 +1,59 @@
+package org.example.helper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// Encodings available for InstanceHealth snapshots. LEGACY is the original
+// "instance:x,zone:y,key:value" text, one line per zone, kept for existing readers.
+public enum OutputFormat {
+  LEGACY(".csv", "text/csv", false),
+  CSV(".csv", "text/csv", false),
+  CSV_GZIP(".csv.gz", "application/gzip", true),
+  COLUMNAR(".ihc", "application/octet-stream", false),
+  COLUMNAR_GZIP(".ihc.gz", "application/gzip", true);
+
+  private final String extension;
+  private final String contentType;
+  private final boolean gzip;
+
+  OutputFormat(String extension, String contentType, boolean gzip) {
+    this.extension = extension;
+    this.contentType = contentType;
+    this.gzip = gzip;
+  }
+
+  public String extension() {
+    return extension;
+  }
+
+  public String contentType() {
+    return contentType;
+  }
+
+  public HealthEncoder newEncoder(OutputStream out, List<String> columns) throws IOException {
+    GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, 64 * 1024) : null;
+    OutputStream target = gzip ? compressed : out;
+    HealthEncoder encoder = switch (this) {
+      case LEGACY -> new LegacyHealthEncoder(target, columns);
+      case CSV, CSV_GZIP -> new CsvHealthEncoder(target, columns);
+      case COLUMNAR, COLUMNAR_GZIP -> new ColumnarHealthEncoder(target, columns);
+    };
+    if (!gzip) {
+      return encoder;
+    }
+    return new HealthEncoder() {
+      @Override
+      public void accept(SampleBatch batch) throws IOException {
+        encoder.accept(batch);
+      }
+
+      @Override
+      public void finish() throws IOException {
+        encoder.finish();
+        compressed.finish();
+      }
+    };
+  }
+}
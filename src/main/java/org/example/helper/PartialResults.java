@@ -0,0 +1,38 @@
+package org.example.helper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Failures of individual scopes (a zone, a metric in a zone, a query) within a collection that
+// otherwise went ahead. Collectors record what they could not fetch here, after retries, instead
+// of dropping it silently, so callers can tell a complete result from a partial one.
+public class PartialResults {
+
+  private final List<Failure> failures = new CopyOnWriteArrayList<>();
+
+  public void record(String scope, Throwable error) {
+    failures.add(new Failure(scope, String.valueOf(error)));
+  }
+
+  public boolean isComplete() {
+    return failures.isEmpty();
+  }
+
+  public List<Failure> failures() {
+    return List.copyOf(failures);
+  }
+
+  public void report(String collection) {
+    if (isComplete()) {
+      return;
+    }
+    System.err.println(collection + " is partial: " + failures.size() + " scope(s) failed");
+    for (Failure failure : failures) {
+      System.err.println("  " + failure.scope + ": " + failure.error);
+    }
+  }
+
+  public record Failure(String scope, String error) {
+
+  }
+}
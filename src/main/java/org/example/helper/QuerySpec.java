@@ -0,0 +1,47 @@
+package org.example.helper;
+
+import com.google.monitoring.v3.Aggregation;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Declarative description of one Monitoring time-series query. window is the furthest back a
+// query looks; with watermarks it usually fetches much less.
+public record QuerySpec(
+    String metricType,
+    String resourceType,
+    Map<String, String> labelFilters,
+    Aggregation.Aligner aligner,
+    Aggregation.Reducer reducer,
+    List<String> groupByFields,
+    Duration alignmentPeriod,
+    Duration window) {
+
+  public static QuerySpec of(String metricType, String resourceType,
+      Map<String, String> labelFilters, Aggregation.Aligner aligner, Duration alignmentPeriod,
+      Duration window) {
+    return new QuerySpec(metricType, resourceType, labelFilters, aligner,
+        Aggregation.Reducer.REDUCE_NONE, List.of(), alignmentPeriod, window);
+  }
+
+  public QuerySpec withReducer(Aggregation.Reducer reducer, String... groupByFields) {
+    return new QuerySpec(metricType, resourceType, labelFilters, aligner, reducer,
+        List.of(groupByFields), alignmentPeriod, window);
+  }
+
+  // Watermark scope for the series this spec returns
+  String scope() {
+    return metricType + "|" + new TreeMap<>(labelFilters);
+  }
+
+  Aggregation aggregation() {
+    return Aggregation.newBuilder()
+        .setPerSeriesAligner(aligner)
+        .setCrossSeriesReducer(reducer)
+        .addAllGroupByFields(groupByFields)
+        .setAlignmentPeriod(com.google.protobuf.Duration.newBuilder()
+            .setSeconds(alignmentPeriod.toSeconds()))
+        .build();
+  }
+}
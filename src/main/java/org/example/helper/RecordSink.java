@@ -0,0 +1,10 @@
+package org.example.helper;
+
+import java.io.IOException;
+
+// Destination for output records as collectors produce them
+@FunctionalInterface
+public interface RecordSink {
+
+  void write(String record) throws IOException;
+}
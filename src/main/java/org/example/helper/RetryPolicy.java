@@ -0,0 +1,93 @@
+package org.example.helper;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.BaseServiceException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Retries transient failures with exponential backoff and full jitter, giving up after
+// maxAttempts or once the overall deadline has passed. Failures are classified the same way for
+// gRPC/REST Google clients (gax and BaseServiceException), the Kubernetes client and plain I/O.
+public record RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff,
+    Duration deadline) {
+
+  public static RetryPolicy defaults() {
+    return new RetryPolicy(4, Duration.ofMillis(250), Duration.ofSeconds(10),
+        Duration.ofSeconds(60));
+  }
+
+  // Retries are counted in Telemetry under the operation name
+  public <T> T run(String operation, Callable<T> call) throws Exception {
+    long deadlineNanos = System.nanoTime() + deadline.toNanos();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return call.call();
+      } catch (Exception e) {
+        long backoffNanos = backoffNanos(attempt);
+        if (attempt >= maxAttempts || !isRetryable(e)
+            || System.nanoTime() + backoffNanos > deadlineNanos) {
+          throw e;
+        }
+        Telemetry.shared().count("collector_retries_total", "operation", operation);
+        TimeUnit.NANOSECONDS.sleep(backoffNanos);
+      }
+    }
+  }
+
+  // Remaining time before the overall deadline of a call that started at startNanos
+  public long remainingNanos(long startNanos) {
+    return startNanos + deadline.toNanos() - System.nanoTime();
+  }
+
+  private long backoffNanos(int attempt) {
+    long ceiling = Math.min(maxBackoff.toNanos(),
+        initialBackoff.toNanos() << Math.min(attempt - 1, 20));
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  public static boolean isRetryable(Throwable error) {
+    if (error instanceof ApiException apiException) {
+      return apiException.isRetryable() || isRetryableCode(apiException.getStatusCode().getCode());
+    }
+    if (error instanceof BaseServiceException serviceException) {
+      return serviceException.isRetryable();
+    }
+    if (error instanceof io.kubernetes.client.openapi.ApiException kubernetesException) {
+      int code = kubernetesException.getCode();
+      // Code 0 means the request never got a response (connection reset, timeout)
+      return code == 0 || code == 429 || code >= 500;
+    }
+    if (error instanceof TimeoutException || error instanceof SocketTimeoutException) {
+      return true;
+    }
+    return error instanceof IOException && !(error instanceof InterruptedIOException);
+  }
+
+  // Quota and rate-limit rejections, which should slow the caller down as well as be retried
+  public static boolean isThrottled(Throwable error) {
+    if (error instanceof ApiException apiException) {
+      return apiException.getStatusCode().getCode() == StatusCode.Code.RESOURCE_EXHAUSTED;
+    }
+    if (error instanceof BaseServiceException serviceException) {
+      return serviceException.getCode() == 429;
+    }
+    if (error instanceof io.kubernetes.client.openapi.ApiException kubernetesException) {
+      return kubernetesException.getCode() == 429;
+    }
+    return false;
+  }
+
+  private static boolean isRetryableCode(StatusCode.Code code) {
+    return switch (code) {
+      case UNAVAILABLE, DEADLINE_EXCEEDED, RESOURCE_EXHAUSTED, ABORTED, INTERNAL -> true;
+      default -> false;
+    };
+  }
+}
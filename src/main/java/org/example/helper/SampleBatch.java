@@ -0,0 +1,138 @@
+package org.example.helper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Typed metric samples in parallel primitive arrays: (labels, metric, timestamp, value) per row.
+// Every collector produces batches and every sink consumes them; strings are only built when a
+// batch is finally formatted. Batches are pooled, so steady-state collection reuses the same
+// arrays cycle after cycle.
+public class SampleBatch {
+
+  private static final int INITIAL_CAPACITY = 256;
+  private static final int MAX_POOLED = 64;
+  private static final Queue<SampleBatch> pool = new ConcurrentLinkedQueue<>();
+
+  private LabelSet[] labels = new LabelSet[INITIAL_CAPACITY];
+  private int[] metrics = new int[INITIAL_CAPACITY];
+  private long[] timestamps = new long[INITIAL_CAPACITY];
+  private double[] values = new double[INITIAL_CAPACITY];
+  private int size;
+
+  public static SampleBatch acquire() {
+    SampleBatch batch = pool.poll();
+    return batch != null ? batch : new SampleBatch();
+  }
+
+  // Returns the batch to the pool; callers must not touch it afterwards
+  public static void release(SampleBatch batch) {
+    batch.clear();
+    if (pool.size() < MAX_POOLED) {
+      pool.offer(batch);
+    }
+  }
+
+  public void add(LabelSet labelSet, int metric, long timestampMillis, double value) {
+    if (size == values.length) {
+      int capacity = size * 2;
+      labels = Arrays.copyOf(labels, capacity);
+      metrics = Arrays.copyOf(metrics, capacity);
+      timestamps = Arrays.copyOf(timestamps, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    labels[size] = labelSet;
+    metrics[size] = metric;
+    timestamps[size] = timestampMillis;
+    values[size] = value;
+    size++;
+  }
+
+  public void add(LabelSet labelSet, String metric, long timestampMillis, double value) {
+    add(labelSet, Symbols.intern(metric), timestampMillis, value);
+  }
+
+  public void addAll(SampleBatch other) {
+    for (int i = 0; i < other.size; i++) {
+      add(other.labels[i], other.metrics[i], other.timestamps[i], other.values[i]);
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(labels, 0, size, null);
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public LabelSet labels(int index) {
+    return labels[index];
+  }
+
+  public int metric(int index) {
+    return metrics[index];
+  }
+
+  public long timestamp(int index) {
+    return timestamps[index];
+  }
+
+  public double value(int index) {
+    return values[index];
+  }
+
+  // Pivots consecutive samples sharing a label set into one row, with values placed at the
+  // position of their metric in columns (metric symbol ids). Metrics without a sample read as 0.
+  // The row array is reused between calls to the handler.
+  public void forEachRow(int[] columns, RowHandler handler) throws IOException {
+    double[] row = new double[columns.length];
+    int start = 0;
+    while (start < size) {
+      LabelSet rowLabels = labels[start];
+      Arrays.fill(row, 0.0);
+      int end = start;
+      for (; end < size && labels[end] == rowLabels; end++) {
+        for (int column = 0; column < columns.length; column++) {
+          if (columns[column] == metrics[end]) {
+            row[column] = values[end];
+            break;
+          }
+        }
+      }
+      handler.row(rowLabels, row);
+      start = end;
+    }
+  }
+
+  // One "metric{labels} value timestamp" line per sample
+  public StringBuilder appendText(StringBuilder builder) {
+    for (int i = 0; i < size; i++) {
+      builder.append(Symbols.name(metrics[i])).append(labels[i])
+          .append(' ').append(values[i])
+          .append(' ').append(timestamps[i]).append('\n');
+    }
+    return builder;
+  }
+
+  public static int[] columns(Iterable<String> metricNames) {
+    int[] columns = new int[0];
+    for (String metricName : metricNames) {
+      columns = Arrays.copyOf(columns, columns.length + 1);
+      columns[columns.length - 1] = Symbols.intern(metricName);
+    }
+    return columns;
+  }
+
+  @FunctionalInterface
+  public interface RowHandler {
+
+    void row(LabelSet labels, double[] values) throws IOException;
+  }
+}
@@ -0,0 +1,10 @@
+package org.example.helper;
+
+import java.io.IOException;
+
+// Consumer of collected samples. The batch is only valid for the duration of the call.
+@FunctionalInterface
+public interface SampleSink {
+
+  void accept(SampleBatch batch) throws IOException;
+}
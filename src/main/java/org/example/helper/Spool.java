@@ -0,0 +1,306 @@
+package org.example.helper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Durable local queue of objects waiting to be uploaded, so collection never blocks on (or is lost
+// to) GCS. Records are appended to fixed-size, memory-mapped segment files, each framed as
+// [length][crc32][payload] and forced to disk before append returns; a zero length marks the end
+// of a segment. The reader's position is checkpointed to a small file after every commit, so a
+// restart replays exactly the records that were not yet uploaded. A torn or corrupt tail left by
+// a crash is detected by its CRC and truncated. Once maxSegments exist the oldest is dropped,
+// uploaded or not, bounding disk use.
+public class Spool implements AutoCloseable {
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final int FRAME_HEADER = 8;
+  // Created time and the two string lengths
+  private static final int RECORD_HEADER = 8 + 2 + 2;
+
+  private final Path directory;
+  private final int segmentBytes;
+  private final int maxSegments;
+  private final Path checkpointFile;
+  // Segment sequence number to file, oldest first
+  private final TreeMap<Long, Path> segments = new TreeMap<>();
+  private long writeSegment;
+  private MappedByteBuffer writeBuffer;
+  private Position readPosition;
+  private long readMappedSegment = -1;
+  private MappedByteBuffer readBuffer;
+
+  public Spool(Path directory, int segmentBytes, int maxSegments) throws IOException {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.maxSegments = Math.max(2, maxSegments);
+    this.checkpointFile = directory.resolve("checkpoint");
+    Files.createDirectories(directory);
+    try (Stream<Path> files = Files.list(directory)) {
+      files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .forEach(file -> segments.put(sequence(file), file));
+    }
+    if (segments.isEmpty()) {
+      openSegment(0);
+    } else {
+      writeSegment = segments.lastKey();
+      writeBuffer = map(segments.lastEntry().getValue(), FileChannel.MapMode.READ_WRITE);
+      recoverTail();
+    }
+    readPosition = loadCheckpoint();
+  }
+
+  public record Position(long segment, int offset) {
+
+  }
+
+  // A spooled object: where it goes, and when it was collected
+  public record Record(String objectName, String contentType, long createdMillis, byte[] data) {
+
+  }
+
+  // A record read from the spool, and the position just after it to commit once it is handled
+  public record Entry(Record record, Position next) {
+
+  }
+
+  // The most data a record for objectName can carry: a record has to fit in a single segment,
+  // along with its framing and the end marker
+  public int maxDataBytes(String objectName, String contentType) {
+    return segmentBytes - FRAME_HEADER - RECORD_HEADER - 4
+        - objectName.getBytes(StandardCharsets.UTF_8).length
+        - contentType.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  public synchronized void append(Record record) throws IOException {
+    byte[] name = record.objectName().getBytes(StandardCharsets.UTF_8);
+    byte[] type = record.contentType().getBytes(StandardCharsets.UTF_8);
+    int length = RECORD_HEADER + name.length + type.length + record.data().length;
+    // Room is always left for the zero end marker
+    if (FRAME_HEADER + length + 4 > segmentBytes) {
+      throw new IOException("Record of " + length + " bytes does not fit in a spool segment of "
+          + segmentBytes + " bytes");
+    }
+    if (writeBuffer.position() + FRAME_HEADER + length + 4 > segmentBytes) {
+      rotate();
+    }
+
+    // The payload is written in place and checksummed there. The length goes in last, so a crash
+    // mid-append leaves the previous end marker in place.
+    int start = writeBuffer.position();
+    writeBuffer.position(start + FRAME_HEADER);
+    writeBuffer.putLong(record.createdMillis())
+        .putShort((short) name.length).put(name)
+        .putShort((short) type.length).put(type)
+        .put(record.data());
+    ByteBuffer payload = writeBuffer.duplicate();
+    payload.position(start + FRAME_HEADER).limit(start + FRAME_HEADER + length);
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    writeBuffer.putInt(start + 4, (int) crc.getValue());
+    writeBuffer.putInt(0);
+    writeBuffer.putInt(start, length);
+    writeBuffer.position(writeBuffer.position() - 4);
+    writeBuffer.force();
+    Telemetry.shared().add("collector_spool_bytes_total", FRAME_HEADER + length);
+  }
+
+  // Up to max records after the checkpoint, oldest first. Corrupt records in sealed segments are
+  // skipped with the rest of their segment.
+  public synchronized List<Entry> read(int max) throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    Position position = readPosition;
+    while (entries.size() < max) {
+      // The write segment is never dropped, so there is always a segment at or after position
+      long segment = segments.ceilingKey(position.segment());
+      if (segment != position.segment()) {
+        position = new Position(segment, 0);
+      }
+      ByteBuffer buffer = readBuffer(position.segment());
+      int length = position.offset() + FRAME_HEADER <= segmentBytes
+          ? buffer.getInt(position.offset()) : 0;
+      Record record = length > 0 ? decode(buffer, position.offset(), length) : null;
+      if (record == null) {
+        Long next = segments.higherKey(position.segment());
+        if (next == null) {
+          break;
+        }
+        if (length > 0) {
+          System.err.println("Skipping corrupt spool records in segment " + position.segment());
+          Telemetry.shared().count("collector_spool_corrupt_total");
+        }
+        position = new Position(next, 0);
+        continue;
+      }
+      position = new Position(position.segment(), position.offset() + FRAME_HEADER + length);
+      entries.add(new Entry(record, position));
+    }
+    return entries;
+  }
+
+  // Marks everything before next as handled and deletes segments that are fully behind it. A
+  // position at or behind the checkpoint, or in a segment dropped since it was read (the spool
+  // filled up while its records were uploading), is ignored, so the checkpoint never moves back.
+  public synchronized void commit(Position next) throws IOException {
+    if (!segments.containsKey(next.segment()) || compare(next, readPosition) <= 0) {
+      return;
+    }
+    readPosition = next;
+    Properties properties = new Properties();
+    properties.setProperty("segment", String.valueOf(next.segment()));
+    properties.setProperty("offset", String.valueOf(next.offset()));
+    Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      properties.store(writer, "Spool checkpoint");
+    }
+    Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    while (segments.firstKey() < next.segment()) {
+      deleteSegment(segments.firstKey());
+    }
+  }
+
+  public synchronized boolean isEmpty() throws IOException {
+    return read(1).isEmpty();
+  }
+
+  @Override
+  public synchronized void close() {
+    writeBuffer.force();
+  }
+
+  private void rotate() throws IOException {
+    writeBuffer.force();
+    openSegment(writeSegment + 1);
+    while (segments.size() > maxSegments) {
+      long oldest = segments.firstKey();
+      if (readPosition.segment() <= oldest) {
+        System.err.println("Spool full, dropping segment " + oldest + " before it was uploaded");
+        Telemetry.shared().count("collector_spool_dropped_segments_total");
+        commit(new Position(segments.higherKey(oldest), 0));
+      } else {
+        deleteSegment(oldest);
+      }
+    }
+  }
+
+  private void openSegment(long sequence) throws IOException {
+    Path file = directory.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+    segments.put(sequence, file);
+    writeSegment = sequence;
+    writeBuffer = map(file, FileChannel.MapMode.READ_WRITE);
+  }
+
+  // Only sealed segments are deleted, so the write mapping is never one of them. Dropping the
+  // read mapping does not unmap it; that only happens once the buffer is garbage collected, so
+  // the file's disk space stays in use until then (and on Windows the delete itself fails).
+  private void deleteSegment(long sequence) throws IOException {
+    if (readMappedSegment == sequence) {
+      readMappedSegment = -1;
+      readBuffer = null;
+    }
+    Files.deleteIfExists(segments.remove(sequence));
+  }
+
+  // Finds the end of the last valid record in the write segment and re-marks it
+  private void recoverTail() {
+    int offset = 0;
+    while (offset + FRAME_HEADER <= segmentBytes) {
+      int length = writeBuffer.getInt(offset);
+      if (length <= 0 || decode(writeBuffer, offset, length) == null) {
+        break;
+      }
+      offset += FRAME_HEADER + length;
+    }
+    if (offset + 4 <= segmentBytes) {
+      writeBuffer.putInt(offset, 0);
+    }
+    writeBuffer.position(offset);
+    writeBuffer.force();
+  }
+
+  private Position loadCheckpoint() throws IOException {
+    Position start = new Position(segments.firstKey(), 0);
+    if (!Files.exists(checkpointFile)) {
+      return start;
+    }
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    Position saved = new Position(Long.parseLong(properties.getProperty("segment", "0")),
+        Integer.parseInt(properties.getProperty("offset", "0")));
+    // Segments before the checkpoint may have been dropped while the spool was full
+    return segments.containsKey(saved.segment()) ? saved : start;
+  }
+
+  private ByteBuffer readBuffer(long segment) throws IOException {
+    if (segment == writeSegment) {
+      return writeBuffer;
+    }
+    if (readMappedSegment != segment) {
+      readBuffer = map(segments.get(segment), FileChannel.MapMode.READ_ONLY);
+      readMappedSegment = segment;
+    }
+    return readBuffer;
+  }
+
+  private static int compare(Position a, Position b) {
+    return a.segment() != b.segment()
+        ? Long.compare(a.segment(), b.segment()) : Integer.compare(a.offset(), b.offset());
+  }
+
+  // The record framed at offset, or null if it runs past the segment or fails its CRC
+  private Record decode(ByteBuffer buffer, int offset, int length) {
+    if (length < 12 || offset + FRAME_HEADER + length > segmentBytes) {
+      return null;
+    }
+    ByteBuffer payload = buffer.duplicate();
+    payload.position(offset + FRAME_HEADER).limit(offset + FRAME_HEADER + length);
+    CRC32 crc = new CRC32();
+    crc.update(payload.duplicate());
+    if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+      return null;
+    }
+    long createdMillis = payload.getLong();
+    String name = string(payload);
+    String type = string(payload);
+    byte[] data = new byte[payload.remaining()];
+    payload.get(data);
+    return new Record(name, type, createdMillis, data);
+  }
+
+  private static String string(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort() & 0xffff];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException {
+    try (FileChannel channel = mode == FileChannel.MapMode.READ_ONLY
+        ? FileChannel.open(file, StandardOpenOption.READ)
+        : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      return channel.map(mode, 0, segmentBytes);
+    }
+  }
+
+  private static long sequence(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+  }
+}
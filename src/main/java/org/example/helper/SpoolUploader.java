@@ -0,0 +1,178 @@
+package org.example.helper;
+
+import com.google.cloud.storage.StorageException;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Drains a Spool to GCS on its own thread, so uploads never hold up collection. Records are read
+// in batches; with OVERWRITE publishing only the newest of a run of records for the same object
+// is uploaded, since the older ones would be replaced straight away. The checkpoint advances only
+// after an upload succeeds, and failures back off exponentially, up to five minutes, before the
+// same records are tried again. A replayed PARTITIONED record whose object already exists counts
+// as uploaded, and only its pointer is published again.
+public class SpoolUploader implements AutoCloseable {
+
+  private static final int BATCH_SIZE = 32;
+  private static final long INITIAL_BACKOFF_MILLIS = 1_000;
+  private static final long MAX_BACKOFF_MILLIS = 300_000;
+
+  private final Spool spool;
+  private final String projectId;
+  private final String bucketName;
+  private final int chunkSize;
+  private final GCSHelper.PublishMode mode;
+  private final CollectionEngine engine;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition wakeUp = lock.newCondition();
+  private final Thread thread;
+  private boolean pending = true;
+  private volatile boolean closed;
+
+  public SpoolUploader(Spool spool, String projectId, String bucketName, int chunkSize,
+      GCSHelper.PublishMode mode, CollectionEngine engine) {
+    this.spool = spool;
+    this.projectId = projectId;
+    this.bucketName = bucketName;
+    this.chunkSize = chunkSize;
+    this.mode = mode;
+    this.engine = engine;
+    this.thread = new Thread(this::run, "spool-uploader");
+    this.thread.setDaemon(true);
+  }
+
+  // Starts draining, beginning with anything left over from a previous run
+  public void start() {
+    thread.start();
+  }
+
+  // Called after appending to the spool
+  public void wake() {
+    lock.lock();
+    try {
+      pending = true;
+      wakeUp.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void run() {
+    long backoffMillis = 0;
+    while (!closed) {
+      try {
+        if (backoffMillis > 0) {
+          pause(backoffMillis);
+        } else {
+          awaitWork();
+        }
+        drain();
+        backoffMillis = 0;
+      } catch (InterruptedException e) {
+        return;
+      } catch (IOException | RuntimeException e) {
+        backoffMillis = backoffMillis == 0
+            ? INITIAL_BACKOFF_MILLIS : Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+        Telemetry.shared().count("collector_spool_upload_failures_total");
+        System.err.println("Error uploading spooled data, retrying in " + backoffMillis
+            + " ms: " + e.getMessage());
+      }
+    }
+  }
+
+  private void awaitWork() throws InterruptedException {
+    lock.lock();
+    try {
+      while (!pending && !closed) {
+        wakeUp.await();
+      }
+      pending = false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Sleeps through a backoff, cut short only by close()
+  private void pause(long millis) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    lock.lock();
+    try {
+      long remaining;
+      while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+        wakeUp.awaitNanos(remaining);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void drain() throws IOException {
+    List<Spool.Entry> entries;
+    while (!closed && !(entries = spool.read(BATCH_SIZE)).isEmpty()) {
+      for (int i = 0; i < entries.size(); i++) {
+        Spool.Entry entry = entries.get(i);
+        boolean superseded = mode == GCSHelper.PublishMode.OVERWRITE && i + 1 < entries.size()
+            && entries.get(i + 1).record().objectName().equals(entry.record().objectName());
+        if (superseded) {
+          Telemetry.shared().count("collector_spool_superseded_total");
+        } else {
+          upload(entry.record());
+        }
+        spool.commit(entry.next());
+      }
+    }
+  }
+
+  private void upload(Spool.Record record) throws IOException {
+    Instant collectedAt = Instant.ofEpochMilli(record.createdMillis());
+    GCSRecordSink sink = GCSHelper.openSink(projectId, bucketName, record.objectName(),
+        record.contentType(), chunkSize, mode, collectedAt, engine);
+    try {
+      try {
+        sink.stream().write(record.data());
+      } catch (IOException | RuntimeException e) {
+        sink.abort();
+        throw e;
+      } finally {
+        sink.close();
+      }
+    } catch (IOException | StorageException e) {
+      // Partitions are written only if absent, so after a crash between finalizing an object and
+      // committing past it, the replayed record fails its precondition. It is already uploaded,
+      // but the crash may have come before its pointer was, so the pointer is published again
+      // (itself conditional on the pointer's current generation).
+      if (mode != GCSHelper.PublishMode.PARTITIONED || !isPreconditionFailure(e)) {
+        throw e;
+      }
+      Telemetry.shared().count("collector_spool_already_uploaded_total");
+      System.err.println("Spooled " + record.objectName() + " was already uploaded, "
+          + "publishing its pointer only");
+      GCSHelper.publishLatest(projectId, bucketName, record.objectName(), collectedAt, engine);
+    }
+  }
+
+  // Finalizing may report the failure directly or wrapped in an IOException
+  private static boolean isPreconditionFailure(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof StorageException storageException) {
+        return storageException.getCode() == 412;
+      }
+    }
+    return false;
+  }
+
+  // Stops after the upload in progress, if any; whatever is left stays spooled for next time
+  @Override
+  public void close() {
+    closed = true;
+    wake();
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package org.example.helper;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide string interner. Metric names and label keys are stored as small int ids so
+// samples and label sets carry no per-sample strings. Ids are never reclaimed (they are held as
+// plain ints, e.g. in static fields), so only names from a fixed vocabulary belong here, never
+// label values such as instance or pod names.
+public class Symbols {
+
+  private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  private static volatile String[] names = new String[1024];
+  private static int count;
+
+  public static int intern(String name) {
+    Integer id = ids.get(name);
+    if (id != null) {
+      return id;
+    }
+    synchronized (Symbols.class) {
+      return ids.computeIfAbsent(name, key -> {
+        if (count == names.length) {
+          names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[count] = key;
+        return count++;
+      });
+    }
+  }
+
+  static synchronized int size() {
+    return count;
+  }
+
+  // Ids are only handed out after their name is stored, so readers need no lock
+  public static String name(int id) {
+    return names[id];
+  }
+}
@@ -0,0 +1,217 @@
+package org.example.helper;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// The collector's own latency histograms and counters, rendered in the Prometheus text format
+// (see MetricsServer). Stage timers also emit JFR events, which cost next to nothing unless a
+// recording has them enabled. Recording is lock-free: a map lookup plus a few atomic adds.
+public class Telemetry {
+
+  private static final Telemetry shared = new Telemetry();
+
+  private final Map<Series, Histogram> histograms = new ConcurrentHashMap<>();
+  private final Map<Series, LongAdder> counters = new ConcurrentHashMap<>();
+
+  public static Telemetry shared() {
+    return shared;
+  }
+
+  // Times a collection stage (zone listing, encoding, upload, ...) until the timer is closed
+  public Timer time(String stage) {
+    return new Timer(histogram("collector_stage_duration_seconds", "stage", stage), stage);
+  }
+
+  // One API attempt, excluding time queued for a concurrency permit or the rate limiter
+  public void recordRpc(String api, String method, long nanos, boolean ok) {
+    histogram("collector_rpc_duration_seconds", "api", api, "method", method).record(nanos);
+    count("collector_rpc_total", "api", api, "method", method, "outcome", ok ? "ok" : "error");
+    RpcEvent event = new RpcEvent();
+    if (event.shouldCommit()) {
+      event.api = api;
+      event.method = method;
+      event.durationNanos = nanos;
+      event.ok = ok;
+      event.commit();
+    }
+  }
+
+  public void count(String name, String... labels) {
+    add(name, 1, labels);
+  }
+
+  public void add(String name, long amount, String... labels) {
+    counters.computeIfAbsent(Series.of(name, labels), key -> new LongAdder()).add(amount);
+  }
+
+  public void writePrometheus(Appendable out) throws IOException {
+    Map<String, Map<Series, LongAdder>> countersByName = new TreeMap<>();
+    counters.forEach((series, counter) -> countersByName
+        .computeIfAbsent(series.name, key -> new TreeMap<>()).put(series, counter));
+    for (Map.Entry<String, Map<Series, LongAdder>> family : countersByName.entrySet()) {
+      out.append("# TYPE ").append(family.getKey()).append(" counter\n");
+      for (Map.Entry<Series, LongAdder> entry : family.getValue().entrySet()) {
+        out.append(family.getKey()).append(entry.getKey().labels("")).append(' ')
+            .append(Long.toString(entry.getValue().sum())).append('\n');
+      }
+    }
+
+    Map<String, Map<Series, Histogram>> histogramsByName = new TreeMap<>();
+    histograms.forEach((series, histogram) -> histogramsByName
+        .computeIfAbsent(series.name, key -> new TreeMap<>()).put(series, histogram));
+    for (Map.Entry<String, Map<Series, Histogram>> family : histogramsByName.entrySet()) {
+      String name = family.getKey();
+      out.append("# TYPE ").append(name).append(" histogram\n");
+      for (Map.Entry<Series, Histogram> entry : family.getValue().entrySet()) {
+        entry.getValue().writePrometheus(name, entry.getKey(), out);
+      }
+    }
+  }
+
+  private Histogram histogram(String name, String... labels) {
+    return histograms.computeIfAbsent(Series.of(name, labels), key -> new Histogram());
+  }
+
+  public static class Timer implements AutoCloseable {
+
+    private final Histogram histogram;
+    private final StageEvent event = new StageEvent();
+    private final long startNanos = System.nanoTime();
+
+    private Timer(Histogram histogram, String stage) {
+      this.histogram = histogram;
+      event.stage = stage;
+      event.begin();
+    }
+
+    @Override
+    public void close() {
+      histogram.record(System.nanoTime() - startNanos);
+      event.commit();
+    }
+  }
+
+  // Metric name plus its labels, pre-rendered as k="v" pairs in the order given
+  private record Series(String name, String labels) implements Comparable<Series> {
+
+    static Series of(String name, String... keyValues) {
+      StringBuilder labels = new StringBuilder();
+      for (int i = 0; i + 1 < keyValues.length; i += 2) {
+        if (labels.length() > 0) {
+          labels.append(',');
+        }
+        labels.append(keyValues[i]).append("=\"").append(keyValues[i + 1]
+            .replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+      }
+      return new Series(name, labels.toString());
+    }
+
+    // Rendered label block, with an extra pre-rendered label (e.g. le="0.5") appended
+    String labels(String extra) {
+      if (labels.isEmpty() && extra.isEmpty()) {
+        return "";
+      }
+      return "{" + labels + (labels.isEmpty() || extra.isEmpty() ? "" : ",") + extra + "}";
+    }
+
+    @Override
+    public int compareTo(Series other) {
+      return labels.compareTo(other.labels);
+    }
+  }
+
+  // Log-linear histogram in the spirit of HdrHistogram: every power-of-two range of
+  // microseconds is split into 8 linear sub-buckets, bounding the relative error at 12.5% with
+  // a fixed array of counters. Exported with one Prometheus bucket per power of two from ~1ms
+  // to ~2 minutes.
+  static class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int RANGES = 40;
+    private static final int FIRST_EXPORTED_RANGE = 7;
+    private static final int LAST_EXPORTED_RANGE = 24;
+
+    private final AtomicLongArray counts = new AtomicLongArray(RANGES * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    void record(long nanos) {
+      counts.incrementAndGet(index(Math.max(0, nanos / 1000)));
+      count.increment();
+      sumNanos.add(nanos);
+    }
+
+    static int index(long micros) {
+      if (micros < SUB_BUCKETS) {
+        return (int) micros;
+      }
+      int msb = 63 - Long.numberOfLeadingZeros(micros);
+      int range = msb - SUB_BUCKET_BITS + 1;
+      int subBucket = (int) (micros >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return Math.min(range * SUB_BUCKETS + subBucket, RANGES * SUB_BUCKETS - 1);
+    }
+
+    // Exclusive upper bound, in microseconds, of everything in ranges up to and including range
+    static long rangeUpperBoundMicros(int range) {
+      return (long) SUB_BUCKETS << range;
+    }
+
+    void writePrometheus(String name, Series series, Appendable out) throws IOException {
+      long cumulative = 0;
+      int index = 0;
+      for (int range = 0; range <= LAST_EXPORTED_RANGE; range++) {
+        for (int sub = 0; sub < SUB_BUCKETS; sub++) {
+          cumulative += counts.get(index++);
+        }
+        if (range >= FIRST_EXPORTED_RANGE) {
+          String le = "le=\"" + rangeUpperBoundMicros(range) / 1e6 + "\"";
+          out.append(name).append("_bucket").append(series.labels(le)).append(' ')
+              .append(Long.toString(cumulative)).append('\n');
+        }
+      }
+      long total = count.sum();
+      out.append(name).append("_bucket").append(series.labels("le=\"+Inf\"")).append(' ')
+          .append(Long.toString(total)).append('\n');
+      out.append(name).append("_sum").append(series.labels("")).append(' ')
+          .append(Double.toString(sumNanos.sum() / 1e9)).append('\n');
+      out.append(name).append("_count").append(series.labels("")).append(' ')
+          .append(Long.toString(total)).append('\n');
+    }
+  }
+
+  @Name("org.example.CollectionStage")
+  @Label("Collection Stage")
+  @Category("Collector")
+  static class StageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+  }
+
+  @Name("org.example.Rpc")
+  @Label("API Call Attempt")
+  @Category("Collector")
+  static class RpcEvent extends Event {
+
+    @Label("API")
+    String api;
+
+    @Label("Method")
+    String method;
+
+    @Label("Duration (ns)")
+    long durationNanos;
+
+    @Label("Succeeded")
+    boolean ok;
+  }
+}
@@ -0,0 +1,164 @@
+package org.example.helper;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The most recent samples of every (labels, metric) series, kept so trends (EWMA, peak, rate of
+// change) can be computed locally instead of with another Monitoring query. Storage is one direct
+// buffer allocated up front: maxSeries fixed-size slots, each a small header followed by a ring
+// of windowSize (timestamp, value) pairs, so memory stays at maxSeries * slotBytes no matter how
+// long the collector runs. The EWMA is updated as samples arrive; window aggregates scan at most
+// windowSize entries. When every slot is taken, the least recently used series is recycled; an
+// access-ordered map keeps that series at its head, so eviction costs O(1).
+public class TimeSeriesStore implements SampleSink {
+
+  private static final int LAST_TIMESTAMP = 0;
+  private static final int EWMA = 8;
+  private static final int HEAD = 16;
+  private static final int COUNT = 20;
+  private static final int HEADER_BYTES = 24;
+  private static final int ENTRY_BYTES = 16;
+
+  private final int maxSeries;
+  private final int windowSize;
+  private final int slotBytes;
+  private final double ewmaTauMillis;
+  private final ByteBuffer buffer;
+  private final LinkedHashMap<SeriesKey, Integer> slots = new LinkedHashMap<>(16, 0.75f, true);
+  private int used;
+
+  public TimeSeriesStore(int maxSeries, int windowSize, Duration ewmaTimeConstant) {
+    this.maxSeries = maxSeries;
+    this.windowSize = windowSize;
+    this.slotBytes = HEADER_BYTES + windowSize * ENTRY_BYTES;
+    this.ewmaTauMillis = ewmaTimeConstant.toMillis();
+    this.buffer = ByteBuffer.allocateDirect(Math.multiplyExact(maxSeries, slotBytes));
+  }
+
+  public long capacityBytes() {
+    return (long) maxSeries * slotBytes;
+  }
+
+  public synchronized int size() {
+    return slots.size();
+  }
+
+  // NaN samples (failed fetches) are skipped, as are samples no newer than the series' last one
+  @Override
+  public synchronized void accept(SampleBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      record(batch.labels(i), batch.metric(i), batch.timestamp(i), batch.value(i));
+    }
+  }
+
+  public synchronized void record(LabelSet labels, int metric, long timestampMillis,
+      double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    int base = slot(new SeriesKey(labels, metric)) * slotBytes;
+    int count = buffer.getInt(base + COUNT);
+    long lastTimestamp = buffer.getLong(base + LAST_TIMESTAMP);
+    if (count > 0 && timestampMillis <= lastTimestamp) {
+      return;
+    }
+
+    // Time-weighted EWMA, so irregular intervals (overruns, restarts) decay correctly
+    double ewma = value;
+    if (count > 0) {
+      double alpha = 1 - Math.exp(-(timestampMillis - lastTimestamp) / ewmaTauMillis);
+      double previous = buffer.getDouble(base + EWMA);
+      ewma = previous + alpha * (value - previous);
+    }
+
+    int head = buffer.getInt(base + HEAD);
+    int entry = base + HEADER_BYTES + head * ENTRY_BYTES;
+    buffer.putLong(entry, timestampMillis);
+    buffer.putDouble(entry + 8, value);
+    buffer.putInt(base + HEAD, (head + 1) % windowSize);
+    buffer.putInt(base + COUNT, Math.min(count + 1, windowSize));
+    buffer.putLong(base + LAST_TIMESTAMP, timestampMillis);
+    buffer.putDouble(base + EWMA, ewma);
+  }
+
+  // Aggregates over the samples newer than nowMillis - window, or null if the series is unknown
+  // or has no sample in the window
+  public synchronized Aggregates aggregates(LabelSet labels, int metric, long nowMillis,
+      Duration window) {
+    Integer slot = slots.get(new SeriesKey(labels, metric));
+    if (slot == null) {
+      return null;
+    }
+    int base = slot * slotBytes;
+    int count = buffer.getInt(base + COUNT);
+    int head = buffer.getInt(base + HEAD);
+    long since = nowMillis - window.toMillis();
+
+    // Walk from newest to oldest, stopping at the first sample outside the window
+    int samples = 0;
+    double sum = 0;
+    double peak = Double.NEGATIVE_INFINITY;
+    double last = Double.NaN;
+    long lastTimestamp = 0;
+    double first = Double.NaN;
+    long firstTimestamp = 0;
+    for (int i = 1; i <= count; i++) {
+      int entry = base + HEADER_BYTES + Math.floorMod(head - i, windowSize) * ENTRY_BYTES;
+      long timestamp = buffer.getLong(entry);
+      if (timestamp <= since) {
+        break;
+      }
+      double value = buffer.getDouble(entry + 8);
+      if (samples == 0) {
+        last = value;
+        lastTimestamp = timestamp;
+      }
+      first = value;
+      firstTimestamp = timestamp;
+      sum += value;
+      peak = Math.max(peak, value);
+      samples++;
+    }
+    if (samples == 0) {
+      return null;
+    }
+    double ratePerSecond = lastTimestamp > firstTimestamp
+        ? (last - first) * 1000.0 / (lastTimestamp - firstTimestamp) : 0.0;
+    return new Aggregates(samples, last, sum / samples, buffer.getDouble(base + EWMA), peak,
+        ratePerSecond);
+  }
+
+  private int slot(SeriesKey key) {
+    Integer slot = slots.get(key);
+    if (slot != null) {
+      return slot;
+    }
+    int assigned = used < maxSeries ? used++ : evictLeastRecentlyUsed();
+    slots.put(key, assigned);
+    buffer.putInt(assigned * slotBytes + HEAD, 0);
+    buffer.putInt(assigned * slotBytes + COUNT, 0);
+    return assigned;
+  }
+
+  // Only runs once the store is full, typically for series of deleted instances
+  private int evictLeastRecentlyUsed() {
+    Iterator<Map.Entry<SeriesKey, Integer>> eldest = slots.entrySet().iterator();
+    int slot = eldest.next().getValue();
+    eldest.remove();
+    Telemetry.shared().count("collector_store_evictions_total");
+    return slot;
+  }
+
+  private record SeriesKey(LabelSet labels, int metric) {
+
+  }
+
+  // Window statistics of one series. ewma covers the series' whole history, not just the window.
+  public record Aggregates(int samples, double last, double mean, double ewma, double peak,
+      double ratePerSecond) {
+
+  }
+}
@@ -0,0 +1,167 @@
+package org.example.helper;
+
+import io.kubernetes.client.custom.ContainerMetrics;
+import io.kubernetes.client.custom.NodeMetrics;
+import io.kubernetes.client.custom.NodeMetricsList;
+import io.kubernetes.client.custom.PodMetrics;
+import io.kubernetes.client.custom.PodMetricsList;
+import io.kubernetes.client.custom.Quantity;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.models.V1Container;
+import io.kubernetes.client.openapi.models.V1Node;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.util.generic.GenericKubernetesApi;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+// Live cpu/memory usage from the metrics.k8s.io API joined with pod requests/limits and node
+// allocatable from the KubernetesCache, giving per-pod and per-node utilization ratios in one
+// pass. Usage is the metrics-server's most recent sample, so this is far cheaper and fresher
+// than the hour-long Cloud Monitoring query, which is only used when the metrics API is missing.
+public class UtilizationHelper {
+
+  private static final List<String> resources = List.of("cpu", "memory");
+
+  // The metrics.k8s.io reads go through the engine like every other Kubernetes call, so they are
+  // retried, rate limited and bounded by the call deadline
+  public static SampleBatch fetchUtilization(String projectId, String clusterName,
+      Set<String> namespaces, CollectionEngine engine) throws IOException {
+    ApiClient client = ClientRegistry.shared().kubernetes();
+    KubernetesCache cache = KubernetesCache.shared();
+    SampleBatch batch = SampleBatch.acquire();
+    try {
+      long now = System.currentTimeMillis();
+      for (PodMetrics podMetrics : listPodMetrics(client, namespaces, engine)) {
+        addPodUtilization(batch, podMetrics, cache, now);
+      }
+      for (NodeMetrics nodeMetrics : listNodeMetrics(client, engine)) {
+        addNodeUtilization(batch, nodeMetrics, cache, now);
+      }
+      return batch;
+    } catch (IOException | RuntimeException e) {
+      SampleBatch.release(batch);
+      throw e;
+    } catch (ApiException e) {
+      SampleBatch.release(batch);
+      System.err.println("Error reading metrics.k8s.io (HTTP " + e.getCode()
+          + "), falling back to Cloud Monitoring: " + e.getMessage());
+      return MonitoringHelper.fetchGkeMetrics(projectId, clusterName, engine);
+    }
+  }
+
+  // Usage plus usage/request and usage/limit summed over the pod's containers. Ratios are
+  // skipped when a container has no request (or limit) for the resource, since the pod total
+  // would then be meaningless.
+  private static void addPodUtilization(SampleBatch batch, PodMetrics podMetrics,
+      KubernetesCache cache, long now) {
+    String namespace = podMetrics.getMetadata().getNamespace();
+    String podName = podMetrics.getMetadata().getName();
+    V1Pod pod = cache.pod(namespace, podName);
+    LabelSet labels = LabelSet.of("namespace", namespace, "pod", podName);
+    for (String resource : resources) {
+      double usage = 0;
+      for (ContainerMetrics container : podMetrics.getContainers()) {
+        usage += quantity(container.getUsage(), resource);
+      }
+      batch.add(labels, "pod/usage/" + resource, now, usage);
+      if (pod == null) {
+        continue;
+      }
+      double requests = sumContainers(pod, resource, true);
+      if (requests > 0) {
+        batch.add(labels, "pod/utilization/" + resource, now, usage / requests);
+      }
+      double limits = sumContainers(pod, resource, false);
+      if (limits > 0) {
+        batch.add(labels, "pod/limit-utilization/" + resource, now, usage / limits);
+      }
+    }
+  }
+
+  private static void addNodeUtilization(SampleBatch batch, NodeMetrics nodeMetrics,
+      KubernetesCache cache, long now) {
+    String nodeName = nodeMetrics.getMetadata().getName();
+    V1Node node = cache.node(nodeName);
+    LabelSet labels = LabelSet.of("node", nodeName);
+    for (String resource : resources) {
+      double usage = quantity(nodeMetrics.getUsage(), resource);
+      batch.add(labels, "node/usage/" + resource, now, usage);
+      double allocatable = node != null && node.getStatus() != null
+          ? quantity(node.getStatus().getAllocatable(), resource) : 0;
+      if (allocatable > 0) {
+        batch.add(labels, "node/utilization/" + resource, now, usage / allocatable);
+      }
+    }
+  }
+
+  // Sum of the containers' requests (or limits), or 0 if any container does not set one
+  private static double sumContainers(V1Pod pod, String resource, boolean requests) {
+    double total = 0;
+    for (V1Container container : pod.getSpec().getContainers()) {
+      if (container.getResources() == null) {
+        return 0;
+      }
+      double value = quantity(requests
+          ? container.getResources().getRequests()
+          : container.getResources().getLimits(), resource);
+      if (value <= 0) {
+        return 0;
+      }
+      total += value;
+    }
+    return total;
+  }
+
+  private static double quantity(Map<String, Quantity> quantities, String resource) {
+    if (quantities == null || quantities.get(resource) == null) {
+      return 0;
+    }
+    return quantities.get(resource).getNumber().doubleValue();
+  }
+
+  // An empty namespace set lists pod metrics across all namespaces
+  private static List<PodMetrics> listPodMetrics(ApiClient client, Set<String> namespaces,
+      CollectionEngine engine) throws ApiException, IOException {
+    GenericKubernetesApi<PodMetrics, PodMetricsList> api = new GenericKubernetesApi<>(
+        PodMetrics.class, PodMetricsList.class, "metrics.k8s.io", "v1beta1", "pods", client);
+    if (namespaces.isEmpty()) {
+      return call(engine, "list/podmetrics",
+          () -> api.list().throwsApiException().getObject().getItems());
+    }
+    List<PodMetrics> items = new ArrayList<>();
+    for (String namespace : namespaces) {
+      items.addAll(call(engine, "list/podmetrics",
+          () -> api.list(namespace).throwsApiException().getObject().getItems()));
+    }
+    return items;
+  }
+
+  private static List<NodeMetrics> listNodeMetrics(ApiClient client, CollectionEngine engine)
+      throws ApiException, IOException {
+    GenericKubernetesApi<NodeMetrics, NodeMetricsList> api = new GenericKubernetesApi<>(
+        NodeMetrics.class, NodeMetricsList.class, "metrics.k8s.io", "v1beta1", "nodes", client);
+    return call(engine, "list/nodemetrics",
+        () -> api.list().throwsApiException().getObject().getItems());
+  }
+
+  // An ApiException that outlasts the retries is passed on so the caller can fall back to
+  // Cloud Monitoring; anything else surfaces as an IOException
+  private static <T> T call(CollectionEngine engine, String method, Callable<T> call)
+      throws ApiException, IOException {
+    try {
+      return engine.call(CollectionEngine.KUBERNETES, method, call);
+    } catch (ApiException | IOException | RuntimeException e) {
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading metrics.k8s.io", e);
+    } catch (Exception e) {
+      throw new IOException("Error reading metrics.k8s.io", e);
+    }
+  }
+}
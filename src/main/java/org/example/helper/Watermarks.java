@@ -0,0 +1,118 @@
+package org.example.helper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Last-seen point end time (and value) per time series, grouped by the query scope that returns
+// them (e.g. metric + zone). Collectors use it to ask Monitoring only for points newer than what
+// they have already downloaded, and checkpoint it to a local file between runs.
+//
+// Monitoring keeps ingesting points for a while after their end time (GCE agent metrics arrive up
+// to about four minutes late), so queries end at closedUntil(now) rather than now. Only buckets
+// that can no longer change are ever marked as seen; newer ones are read by a later query.
+public class Watermarks {
+
+  private static final Watermarks shared = new Watermarks(Duration.ofMinutes(4));
+
+  private final long ingestLagMillis;
+  private final Map<String, Map<String, Watermark>> watermarksByScope = new ConcurrentHashMap<>();
+
+  public Watermarks(Duration ingestLag) {
+    this.ingestLagMillis = ingestLag.toMillis();
+  }
+
+  public static Watermarks shared() {
+    return shared;
+  }
+
+  // An empty set with the same ingest lag, for one-off reads that must not mark points as seen,
+  // e.g. a fallback that reads series an incremental collector also publishes
+  public Watermarks detached() {
+    return new Watermarks(Duration.ofMillis(ingestLagMillis));
+  }
+
+  // End of the next query window: points ending after it may still be filling in
+  public long closedUntil(long nowMillis) {
+    return nowMillis - ingestLagMillis;
+  }
+
+  // Start of the next query window for a scope ending at endMillis: the oldest watermark among its
+  // series, but never further back than maxLookbackMillis. Series that have not advanced within
+  // the lookback (e.g. deleted instances) are forgotten so they don't hold the window open.
+  public long windowStart(String scope, long endMillis, long maxLookbackMillis) {
+    long floor = endMillis - maxLookbackMillis;
+    Map<String, Watermark> series = watermarksByScope.get(scope);
+    if (series == null) {
+      return floor;
+    }
+    series.values().removeIf(watermark -> watermark.endMillis < floor);
+    return series.values().stream()
+        .mapToLong(Watermark::endMillis)
+        .min()
+        .orElse(floor);
+  }
+
+  public long endMillis(String scope, String series) {
+    Watermark watermark = watermarksByScope.getOrDefault(scope, Map.of()).get(series);
+    return watermark != null ? watermark.endMillis : Long.MIN_VALUE;
+  }
+
+  public void advance(String scope, String series, long endMillis, double value) {
+    watermarksByScope.computeIfAbsent(scope, key -> new ConcurrentHashMap<>())
+        .merge(series, new Watermark(endMillis, value),
+            (current, next) -> next.endMillis > current.endMillis ? next : current);
+  }
+
+  // Latest value seen per series, for series that had no new points in the last window
+  public Map<String, Double> lastValues(String scope) {
+    Map<String, Double> values = new HashMap<>();
+    watermarksByScope.getOrDefault(scope, Map.of())
+        .forEach((series, watermark) -> values.put(series, watermark.value));
+    return values;
+  }
+
+  public void load(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return;
+    }
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    for (String key : properties.stringPropertyNames()) {
+      int scopeEnd = key.lastIndexOf('|');
+      String[] value = properties.getProperty(key).split(",");
+      if (scopeEnd < 0 || value.length != 2) {
+        continue;
+      }
+      advance(key.substring(0, scopeEnd), key.substring(scopeEnd + 1),
+          Long.parseLong(value[0]), Double.parseDouble(value[1]));
+    }
+  }
+
+  public synchronized void save(Path file) throws IOException {
+    Properties properties = new Properties();
+    watermarksByScope.forEach((scope, series) -> series.forEach((name, watermark) ->
+        properties.setProperty(scope + "|" + name, watermark.endMillis + "," + watermark.value)));
+
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      properties.store(writer, "Collection watermarks");
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private record Watermark(long endMillis, double value) {
+
+  }
+}
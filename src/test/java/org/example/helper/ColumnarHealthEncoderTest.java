@@ -0,0 +1,93 @@
+package org.example.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ColumnarHealthEncoderTest {
+
+  private static final List<String> COLUMNS = List.of("cpu/utilization", "memory/ram_used");
+
+  @Test
+  void roundTripsRowsAcrossRowGroups() throws Exception {
+    int rowCount = ColumnarHealthEncoder.BLOCK_ROWS + 10;
+    SampleBatch batch = SampleBatch.acquire();
+    List<String> expected = new ArrayList<>();
+    try {
+      for (int row = 0; row < rowCount; row++) {
+        String zone = "zone-" + (row % 3);
+        String status = row % 2 == 0 ? "RUNNING" : "STOPPING";
+        LabelSet labels = LabelSet.of("instance", "vm-" + row, "zone", zone, "status", status);
+        batch.add(labels, COLUMNS.get(0), 1_000, row / 100.0);
+        batch.add(labels, COLUMNS.get(1), 1_000, row * 2.0);
+        expected.add("vm-" + row + "," + zone + "," + status + "," + row / 100.0 + ","
+            + row * 2.0);
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ColumnarHealthEncoder encoder = new ColumnarHealthEncoder(out, COLUMNS);
+      encoder.accept(batch);
+      encoder.finish();
+
+      assertEquals(expected, decode(out.toByteArray()));
+    } finally {
+      SampleBatch.release(batch);
+    }
+  }
+
+  // Reads the layout documented on ColumnarHealthEncoder back into "instance,zone,status,..."
+  private static List<String> decode(byte[] bytes) throws Exception {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    assertEquals(ColumnarHealthEncoder.MAGIC, in.readInt());
+    int columnCount = in.readInt();
+    List<String> columns = new ArrayList<>();
+    for (int i = 0; i < columnCount; i++) {
+      columns.add(in.readUTF());
+    }
+    assertEquals(COLUMNS, columns);
+
+    List<String> rows = new ArrayList<>();
+    for (int rowCount = in.readInt(); rowCount > 0; rowCount = in.readInt()) {
+      String[] instances = new String[rowCount];
+      for (int row = 0; row < rowCount; row++) {
+        instances[row] = in.readUTF();
+      }
+      String[] zones = readDictionaryColumn(in, rowCount);
+      String[] statuses = readDictionaryColumn(in, rowCount);
+      double[][] values = new double[columnCount][rowCount];
+      for (double[] column : values) {
+        for (int row = 0; row < rowCount; row++) {
+          column[row] = in.readDouble();
+        }
+      }
+      for (int row = 0; row < rowCount; row++) {
+        StringBuilder line = new StringBuilder(instances[row]).append(',').append(zones[row])
+            .append(',').append(statuses[row]);
+        for (double[] column : values) {
+          line.append(',').append(column[row]);
+        }
+        rows.add(line.toString());
+      }
+    }
+    assertEquals(-1, in.read());
+    return rows;
+  }
+
+  private static String[] readDictionaryColumn(DataInputStream in, int rowCount)
+      throws Exception {
+    String[] dictionary = new String[in.readInt()];
+    for (int i = 0; i < dictionary.length; i++) {
+      dictionary[i] = in.readUTF();
+    }
+    String[] column = new String[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      column[row] = dictionary[in.readShort()];
+    }
+    return column;
+  }
+}
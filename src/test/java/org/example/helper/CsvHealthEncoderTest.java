@@ -0,0 +1,99 @@
+package org.example.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CsvHealthEncoderTest {
+
+  private static final List<String> COLUMNS = List.of("cpu/utilization", "disk/read_bytes_count");
+
+  @Test
+  void roundTripsRowsWithQuotedFields() throws Exception {
+    SampleBatch batch = SampleBatch.acquire();
+    try {
+      addRow(batch, LabelSet.of("instance", "vm-1", "zone", "us-central1-a", "status", "RUNNING"),
+          0.5, 1024);
+      addRow(batch, LabelSet.of("instance", "odd,\"name\"", "zone", "line\nbreak",
+          "status", "carriage\rreturn"), Double.NaN, 0);
+
+      String csv = encode(batch);
+      List<List<String>> rows = parse(csv);
+
+      assertEquals(List.of(
+          List.of("instance", "zone", "status", "cpu/utilization", "disk/read_bytes_count"),
+          List.of("vm-1", "us-central1-a", "RUNNING", "0.5", "1024.0"),
+          List.of("odd,\"name\"", "line\nbreak", "carriage\rreturn", "NaN", "0.0")), rows);
+      // Readers that split records on a bare CR must not see one outside quotes
+      assertTrue(csv.contains(",\"carriage\rreturn\","));
+    } finally {
+      SampleBatch.release(batch);
+    }
+  }
+
+  @Test
+  void writesOnlyTheHeaderForAnEmptySnapshot() throws Exception {
+    SampleBatch batch = SampleBatch.acquire();
+    try {
+      assertEquals("instance,zone,status,cpu/utilization,disk/read_bytes_count\r\n",
+          encode(batch));
+    } finally {
+      SampleBatch.release(batch);
+    }
+  }
+
+  private static void addRow(SampleBatch batch, LabelSet labels, double... values) {
+    for (int i = 0; i < values.length; i++) {
+      batch.add(labels, COLUMNS.get(i), 1_000, values[i]);
+    }
+  }
+
+  private static String encode(SampleBatch batch) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CsvHealthEncoder encoder = new CsvHealthEncoder(out, COLUMNS);
+    encoder.accept(batch);
+    encoder.finish();
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  // RFC 4180: CRLF-terminated records, fields quoted when they hold a separator, quote or line
+  // break, quotes doubled inside quoted fields
+  private static List<List<String>> parse(String csv) {
+    List<List<String>> rows = new ArrayList<>();
+    List<String> row = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < csv.length(); i++) {
+      char c = csv.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < csv.length() && csv.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        row.add(field.toString());
+        field.setLength(0);
+      } else if (c == '\r' && i + 1 < csv.length() && csv.charAt(i + 1) == '\n') {
+        row.add(field.toString());
+        field.setLength(0);
+        rows.add(row);
+        row = new ArrayList<>();
+        i++;
+      } else {
+        field.append(c);
+      }
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,135 @@
+package org.example.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+class DeltaTrackerTest {
+
+  private static final List<String> COLUMNS = List.of("cpu/utilization",
+      "network/sent_bytes_count", HealthScore.COLUMN);
+  private static final int[] PUBLISHED_COLUMNS = SampleBatch.columns(List.of("cpu/utilization",
+      "network/sent_bytes_count", HealthScore.COLUMN, DeltaTracker.CHANGE_COLUMN));
+
+  @Test
+  void deltaHoldsAddedChangedAndRemovedRows() throws IOException {
+    DeltaTracker tracker = tracker(Map.of(), 3);
+    cycle(tracker, Map.of("vm-1", row(0.5, 0), "vm-2", row(0.5, 0), "vm-3", row(0.5, 0)));
+
+    Map<String, Double> changes = cycle(tracker,
+        Map.of("vm-1", row(0.5, 0), "vm-2", row(0.9, 0), "vm-4", row(0.1, 0)));
+
+    assertEquals(Map.of("vm-2", DeltaTracker.CHANGED, "vm-3", DeltaTracker.REMOVED,
+        "vm-4", DeltaTracker.ADDED), changes);
+  }
+
+  @Test
+  void driftIsMeasuredAgainstThePublishedRow() throws IOException {
+    DeltaTracker tracker = tracker(Map.of(), 10);
+    cycle(tracker, Map.of("vm-1", row(0.50, 0)));
+
+    // Each step is below the 1% relative and 0.01 absolute thresholds, but together they are not
+    assertTrue(cycle(tracker, Map.of("vm-1", row(0.504, 0))).isEmpty());
+    assertTrue(cycle(tracker, Map.of("vm-1", row(0.508, 0))).isEmpty());
+    assertEquals(Map.of("vm-1", DeltaTracker.CHANGED),
+        cycle(tracker, Map.of("vm-1", row(0.512, 0))));
+  }
+
+  @Test
+  void smallChangesNearZeroStayUnderTheAbsoluteFloor() throws IOException {
+    DeltaTracker tracker = tracker(Map.of("network/sent_bytes_count", 1000.0), 10);
+    cycle(tracker, Map.of("vm-1", row(0.5, 10)));
+
+    assertTrue(cycle(tracker, Map.of("vm-1", row(0.5, 900))).isEmpty());
+    assertEquals(Map.of("vm-1", DeltaTracker.CHANGED),
+        cycle(tracker, Map.of("vm-1", row(0.5, 1200))));
+  }
+
+  @Test
+  void derivedColumnsDoNotMakeARowChanged() throws IOException {
+    DeltaTracker tracker = tracker(Map.of(), 10);
+    Map<String, double[]> rows = new LinkedHashMap<>();
+    rows.put("vm-1", new double[] {0.5, 0, 0.2});
+    cycle(tracker, rows);
+
+    rows.put("vm-1", new double[] {0.5, 0, 0.9});
+    assertTrue(cycle(tracker, rows).isEmpty());
+  }
+
+  @Test
+  void fullSnapshotIsDueEveryCompactionInterval() throws IOException {
+    DeltaTracker tracker = tracker(Map.of(), 3);
+    assertTrue(tracker.isCompactionDue());
+    cycle(tracker, Map.of("vm-1", row(0.5, 0)));
+
+    assertFalse(tracker.isCompactionDue());
+    cycle(tracker, Map.of("vm-1", row(0.5, 0)));
+    assertFalse(tracker.isCompactionDue());
+    cycle(tracker, Map.of("vm-1", row(0.5, 0)));
+    assertTrue(tracker.isCompactionDue());
+    assertEquals(Map.of("vm-1", 0.0), cycle(tracker, Map.of("vm-1", row(0.5, 0))));
+    assertFalse(tracker.isCompactionDue());
+  }
+
+  @Test
+  void uncommittedCycleIsDiscarded() throws IOException {
+    DeltaTracker tracker = tracker(Map.of(), 10);
+    cycle(tracker, Map.of("vm-1", row(0.5, 0)));
+    SampleSink discarded = tracker.delta(batch -> {
+    });
+    discarded.accept(batch(Map.of("vm-1", row(0.9, 0))));
+
+    assertEquals(Map.of("vm-1", DeltaTracker.CHANGED),
+        cycle(tracker, Map.of("vm-1", row(0.9, 0))));
+  }
+
+  private static DeltaTracker tracker(Map<String, Double> absoluteThresholds,
+      int compactionInterval) {
+    return new DeltaTracker(COLUMNS, Set.of(HealthScore.COLUMN), Map.of(), 0.01,
+        absoluteThresholds, compactionInterval);
+  }
+
+  // Runs one committed cycle and returns the change column of every row published, by instance
+  private static Map<String, Double> cycle(DeltaTracker tracker, Map<String, double[]> rows)
+      throws IOException {
+    Map<String, Double> published = new TreeMap<>();
+    SampleSink collect = batch -> batch.forEachRow(PUBLISHED_COLUMNS,
+        (labels, values) -> published.put(labels.get("instance"), values[values.length - 1]));
+    boolean full = tracker.isCompactionDue();
+    SampleSink sink = full ? tracker.track(collect) : tracker.delta(collect);
+    SampleBatch batch = batch(rows);
+    try {
+      sink.accept(batch);
+    } finally {
+      SampleBatch.release(batch);
+    }
+    if (!full) {
+      tracker.finishDelta(collect);
+    }
+    tracker.commit();
+    return published;
+  }
+
+  private static SampleBatch batch(Map<String, double[]> rows) {
+    SampleBatch batch = SampleBatch.acquire();
+    rows.forEach((instance, values) -> {
+      LabelSet labels = LabelSet.of("zone", "us-central1-a", "instance", instance);
+      for (int i = 0; i < values.length; i++) {
+        batch.add(labels, COLUMNS.get(i), 60_000, values[i]);
+      }
+    });
+    return batch;
+  }
+
+  private static double[] row(double cpu, double sentBytes) {
+    return new double[] {cpu, sentBytes, 0.5};
+  }
+}
@@ -0,0 +1,42 @@
+package org.example.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class LabelSetTest {
+
+  @Test
+  void equalSetsAreTheSameInstance() {
+    LabelSet first = LabelSet.of("zone", "us-central1-a", "instance", "vm-1");
+    LabelSet second = LabelSet.of(Map.of("instance", "vm-1", "zone", "us-central1-a"));
+
+    assertSame(first, second);
+    assertNotSame(first, LabelSet.of("zone", "us-central1-a", "instance", "vm-2"));
+    assertEquals("{instance=vm-1,zone=us-central1-a}", first.toString());
+  }
+
+  @Test
+  void withReplacesOrAddsALabel() {
+    LabelSet labels = LabelSet.of("instance", "vm-1", "status", "RUNNING");
+
+    assertSame(LabelSet.of("instance", "vm-1", "status", "STOPPING"),
+        labels.with("status", "STOPPING"));
+    assertEquals("c1", labels.with("cluster", "c1").get("cluster"));
+    assertEquals("", labels.get("cluster"));
+  }
+
+  @Test
+  void labelValuesAreNotInternedAsSymbols() {
+    LabelSet.of("instance", "warm-up");
+    int symbols = Symbols.size();
+    for (int i = 0; i < 1000; i++) {
+      LabelSet.of("instance", "preemptible-" + i);
+    }
+
+    assertEquals(symbols, Symbols.size());
+  }
+}
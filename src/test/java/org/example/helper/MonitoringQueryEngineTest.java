@@ -0,0 +1,79 @@
+package org.example.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.api.Metric;
+import com.google.api.MonitoredResource;
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeInterval;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.monitoring.v3.TypedValue;
+import com.google.protobuf.util.Timestamps;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class MonitoringQueryEngineTest {
+
+  private static final String SCOPE = "kubernetes.io/container/cpu/usage_time|{}";
+
+  @Test
+  void pointsAfterTheClosedEndAreLeftForTheNextQuery() {
+    Watermarks watermarks = new Watermarks(Duration.ZERO);
+    TimeSeries series = series("pod-a", "ns", 60_000, 120_000, 180_000);
+
+    assertEquals(2, read(List.of(series), 120_000, watermarks));
+    assertEquals(1, read(List.of(series), 180_000, watermarks));
+    assertEquals(0, read(List.of(series), 180_000, watermarks));
+  }
+
+  @Test
+  void seriesIdentityDoesNotDependOnLabelOrder() {
+    Watermarks watermarks = new Watermarks(Duration.ZERO);
+    read(List.of(series("pod-a", "ns", 60_000)), 60_000, watermarks);
+
+    TimeSeries reordered = TimeSeries.newBuilder(series("pod-a", "ns", 60_000))
+        .setResource(MonitoredResource.newBuilder()
+            .setType("k8s_container")
+            .putLabels("pod_name", "pod-a")
+            .putLabels("namespace_name", "ns"))
+        .build();
+    assertEquals(0, read(List.of(reordered), 60_000, watermarks));
+  }
+
+  @Test
+  void fallbackReadLeavesPointsForTheMonitoringCycle() {
+    Watermarks monitoring = new Watermarks(Duration.ZERO);
+    List<TimeSeries> series = List.of(series("pod-a", "ns", 60_000, 120_000),
+        series("pod-b", "ns", 60_000));
+
+    // UtilizationHelper's Cloud Monitoring fallback, then the next collectMonitoring cycle
+    assertEquals(3, read(series, 120_000, monitoring.detached()));
+    assertEquals(3, read(series, 120_000, monitoring));
+    assertEquals(0, read(series, 120_000, monitoring));
+  }
+
+  static int read(List<TimeSeries> series, long end, Watermarks watermarks) {
+    SampleBatch batch = MonitoringQueryEngine.newPoints(SCOPE, series, end, watermarks);
+    try {
+      return batch.size();
+    } finally {
+      SampleBatch.release(batch);
+    }
+  }
+
+  static TimeSeries series(String pod, String namespace, long... endMillis) {
+    TimeSeries.Builder series = TimeSeries.newBuilder()
+        .setMetric(Metric.newBuilder().setType("kubernetes.io/container/cpu/usage_time"))
+        .setResource(MonitoredResource.newBuilder()
+            .setType("k8s_container")
+            .putLabels("namespace_name", namespace)
+            .putLabels("pod_name", pod));
+    for (long end : endMillis) {
+      series.addPoints(Point.newBuilder()
+          .setInterval(TimeInterval.newBuilder().setEndTime(Timestamps.fromMillis(end)))
+          .setValue(TypedValue.newBuilder().setDoubleValue(end / 60_000.0)));
+    }
+    return series.build();
+  }
+}
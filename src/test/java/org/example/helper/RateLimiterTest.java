@@ -0,0 +1,109 @@
+package org.example.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+  @Test
+  void throttlingHalvesTheRateDownToAFloor() {
+    CollectionEngine.RateLimiter limiter = new CollectionEngine.RateLimiter(100, new FakeTicker());
+
+    limiter.onThrottled();
+    assertEquals(50.0, limiter.rate(), 1e-9);
+    limiter.onThrottled();
+    assertEquals(25.0, limiter.rate(), 1e-9);
+    for (int i = 0; i < 10; i++) {
+      limiter.onThrottled();
+    }
+    assertEquals(5.0, limiter.rate(), 1e-9);
+  }
+
+  @Test
+  void successRecoversTowardsTheConfiguredRate() {
+    CollectionEngine.RateLimiter limiter = new CollectionEngine.RateLimiter(100, new FakeTicker());
+    limiter.onThrottled();
+
+    limiter.onSuccess();
+    assertEquals(55.0, limiter.rate(), 1e-9);
+    for (int i = 0; i < 20; i++) {
+      limiter.onSuccess();
+    }
+    assertEquals(100.0, limiter.rate(), 1e-9);
+  }
+
+  @Test
+  void waitsOnceTheBucketIsEmpty() throws InterruptedException {
+    FakeTicker ticker = new FakeTicker();
+    CollectionEngine.RateLimiter limiter = new CollectionEngine.RateLimiter(20, ticker);
+    for (int i = 0; i < 20; i++) {
+      limiter.acquire();
+    }
+    assertEquals(0, ticker.sleptNanos);
+
+    // Each token beyond the bucket takes 1/20 s to come back
+    limiter.acquire();
+    assertEquals(50_000_000, ticker.sleptNanos);
+    limiter.acquire();
+    assertEquals(100_000_000, ticker.sleptNanos);
+  }
+
+  @Test
+  void idleTimeRefillsTheBucketUpToOneSecondOfTokens() throws InterruptedException {
+    FakeTicker ticker = new FakeTicker();
+    CollectionEngine.RateLimiter limiter = new CollectionEngine.RateLimiter(20, ticker);
+    for (int i = 0; i < 20; i++) {
+      limiter.acquire();
+    }
+
+    ticker.nanos += 10_000_000_000L;
+    for (int i = 0; i < 20; i++) {
+      limiter.acquire();
+    }
+    assertEquals(0, ticker.sleptNanos);
+    limiter.acquire();
+    assertEquals(50_000_000, ticker.sleptNanos);
+  }
+
+  @Test
+  void throttlingDrainsTheBucket() throws InterruptedException {
+    FakeTicker ticker = new FakeTicker();
+    CollectionEngine.RateLimiter limiter = new CollectionEngine.RateLimiter(20, ticker);
+
+    limiter.onThrottled();
+    limiter.acquire();
+    assertEquals(100_000_000, ticker.sleptNanos);
+  }
+
+  @Test
+  void nonPositiveRateDisablesLimiting() throws InterruptedException {
+    FakeTicker ticker = new FakeTicker();
+    CollectionEngine.RateLimiter limiter = new CollectionEngine.RateLimiter(0, ticker);
+    for (int i = 0; i < 1000; i++) {
+      limiter.acquire();
+    }
+    limiter.onThrottled();
+
+    assertEquals(0.0, limiter.rate(), 1e-9);
+    assertEquals(0, ticker.sleptNanos);
+  }
+
+  // Virtual time: sleeping advances the clock instantly and adds up how long was slept
+  private static class FakeTicker implements CollectionEngine.RateLimiter.Ticker {
+
+    long nanos;
+    long sleptNanos;
+
+    @Override
+    public long nanoTime() {
+      return nanos;
+    }
+
+    @Override
+    public void sleep(long nanos) {
+      this.nanos += nanos;
+      sleptNanos += nanos;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package org.example.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpoolTest {
+
+  // Each record below takes 8 + 8 + 2 + 1 + 2 + 10 + 16 = 47 bytes, so four fit in a segment
+  private static final int SEGMENT_BYTES = 200;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void readReturnsUncommittedRecordsInOrder() throws Exception {
+    try (Spool spool = new Spool(directory, SEGMENT_BYTES, 4)) {
+      spool.append(record("a"));
+      spool.append(record("b"));
+      spool.append(record("c"));
+
+      List<Spool.Entry> entries = spool.read(2);
+      assertEquals(List.of("a", "b"), names(entries));
+      spool.commit(entries.get(0).next());
+
+      assertEquals(List.of("b", "c"), names(spool.read(10)));
+      assertEquals("payload-b-012345", data(spool.read(1).get(0)));
+    }
+  }
+
+  @Test
+  void reopenReplaysFromCheckpoint() throws Exception {
+    try (Spool spool = new Spool(directory, SEGMENT_BYTES, 4)) {
+      for (String name : List.of("a", "b", "c", "d", "e", "f")) {
+        spool.append(record(name));
+      }
+      spool.commit(spool.read(5).get(4).next());
+    }
+
+    try (Spool spool = new Spool(directory, SEGMENT_BYTES, 4)) {
+      assertEquals(List.of("f"), names(spool.read(10)));
+    }
+  }
+
+  @Test
+  void tornTailIsTruncatedOnReopen() throws Exception {
+    Spool.Position second;
+    try (Spool spool = new Spool(directory, SEGMENT_BYTES, 4)) {
+      spool.append(record("a"));
+      spool.append(record("b"));
+      second = spool.read(1).get(0).next();
+    }
+    // Corrupt the last byte of the second record's payload, as a crash mid-write would
+    try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {'X'}), second.offset() + 46);
+    }
+
+    try (Spool spool = new Spool(directory, SEGMENT_BYTES, 4)) {
+      assertEquals(List.of("a"), names(spool.read(10)));
+      spool.append(record("c"));
+      assertEquals(List.of("a", "c"), names(spool.read(10)));
+    }
+  }
+
+  @Test
+  void fullSpoolDropsOldestUnreadSegment() throws Exception {
+    try (Spool spool = new Spool(directory, SEGMENT_BYTES, 2)) {
+      for (String name : List.of("a", "b", "c", "d", "e", "f", "g", "h", "i")) {
+        spool.append(record(name));
+      }
+
+      assertEquals(2, segmentFiles().size());
+      assertEquals(List.of("e", "f", "g", "h", "i"), names(spool.read(10)));
+    }
+  }
+
+  @Test
+  void commitBehindDroppedSegmentIsIgnored() throws Exception {
+    try (Spool spool = new Spool(directory, SEGMENT_BYTES, 2)) {
+      for (String name : List.of("a", "b", "c", "d")) {
+        spool.append(record(name));
+      }
+      // An uploader is still working through segment 0 when the spool fills up and drops it
+      List<Spool.Entry> inFlight = spool.read(4);
+      for (String name : List.of("e", "f", "g", "h", "i")) {
+        spool.append(record(name));
+      }
+      spool.commit(inFlight.get(3).next());
+
+      assertEquals(List.of("e", "f", "g", "h", "i"), names(spool.read(10)));
+
+      List<Spool.Entry> entries = spool.read(10);
+      spool.commit(entries.get(1).next());
+      spool.commit(entries.get(0).next());
+      assertEquals(List.of("g", "h", "i"), names(spool.read(10)));
+    }
+  }
+
+  @Test
+  void recordOfMaxDataBytesFillsASegment() throws Exception {
+    try (Spool spool = new Spool(directory, SEGMENT_BYTES, 4)) {
+      int max = spool.maxDataBytes("a", "text/plain");
+      assertThrows(IOException.class,
+          () -> spool.append(new Spool.Record("a", "text/plain", 1_000, new byte[max + 1])));
+
+      spool.append(new Spool.Record("a", "text/plain", 1_000, new byte[max]));
+      spool.append(record("b"));
+      assertEquals(List.of("a", "b"), names(spool.read(10)));
+      assertEquals(max, spool.read(1).get(0).record().data().length);
+      assertEquals(2, segmentFiles().size());
+    }
+  }
+
+  private List<Path> segmentFiles() throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.toString().endsWith(".seg")).sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static Spool.Record record(String name) {
+    byte[] data = ("payload-" + name + "-012345").getBytes(StandardCharsets.UTF_8);
+    return new Spool.Record(name, "text/plain", 1_000, data);
+  }
+
+  private static String data(Spool.Entry entry) {
+    return new String(entry.record().data(), StandardCharsets.UTF_8);
+  }
+
+  private static List<String> names(List<Spool.Entry> entries) {
+    return entries.stream().map(entry -> entry.record().objectName())
+        .collect(Collectors.toList());
+  }
+}
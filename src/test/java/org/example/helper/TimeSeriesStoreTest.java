@@ -0,0 +1,73 @@
+package org.example.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class TimeSeriesStoreTest {
+
+  private static final int CPU = Symbols.intern("cpu/utilization");
+  private static final Duration WINDOW = Duration.ofHours(1);
+
+  @Test
+  void ringKeepsOnlyTheNewestWindowSamples() {
+    TimeSeriesStore store = new TimeSeriesStore(4, 3, Duration.ofMinutes(5));
+    LabelSet labels = LabelSet.of("instance", "vm-1");
+    for (int i = 1; i <= 5; i++) {
+      store.record(labels, CPU, i * 60_000L, i);
+    }
+
+    TimeSeriesStore.Aggregates aggregates = store.aggregates(labels, CPU, 300_000, WINDOW);
+    assertEquals(3, aggregates.samples());
+    assertEquals(5, aggregates.last());
+    assertEquals(4, aggregates.mean());
+    assertEquals(5, aggregates.peak());
+    assertEquals(1.0 / 60, aggregates.ratePerSecond(), 1e-9);
+  }
+
+  @Test
+  void staleAndNaNSamplesAreSkipped() {
+    TimeSeriesStore store = new TimeSeriesStore(4, 3, Duration.ofMinutes(5));
+    LabelSet labels = LabelSet.of("instance", "vm-1");
+    store.record(labels, CPU, 120_000, 0.5);
+    store.record(labels, CPU, 60_000, 0.9);
+    store.record(labels, CPU, 180_000, Double.NaN);
+
+    TimeSeriesStore.Aggregates aggregates = store.aggregates(labels, CPU, 180_000, WINDOW);
+    assertEquals(1, aggregates.samples());
+    assertEquals(0.5, aggregates.last());
+  }
+
+  @Test
+  void ewmaDecaysWithElapsedTime() {
+    TimeSeriesStore store = new TimeSeriesStore(4, 3, Duration.ofMinutes(1));
+    LabelSet labels = LabelSet.of("instance", "vm-1");
+    store.record(labels, CPU, 0, 0);
+    store.record(labels, CPU, 60_000, 1);
+
+    double alpha = 1 - Math.exp(-1);
+    assertEquals(alpha, store.aggregates(labels, CPU, 60_000, WINDOW).ewma(), 1e-9);
+  }
+
+  @Test
+  void fullStoreRecyclesLeastRecentlyUsedSeries() {
+    TimeSeriesStore store = new TimeSeriesStore(2, 3, Duration.ofMinutes(5));
+    LabelSet first = LabelSet.of("instance", "vm-1");
+    LabelSet second = LabelSet.of("instance", "vm-2");
+    LabelSet third = LabelSet.of("instance", "vm-3");
+    store.record(first, CPU, 60_000, 0.1);
+    store.record(second, CPU, 60_000, 0.2);
+    store.record(first, CPU, 120_000, 0.3);
+    store.record(third, CPU, 120_000, 0.4);
+
+    assertEquals(2, store.size());
+    assertNull(store.aggregates(second, CPU, 120_000, WINDOW));
+    assertNotNull(store.aggregates(first, CPU, 120_000, WINDOW));
+    TimeSeriesStore.Aggregates recycled = store.aggregates(third, CPU, 120_000, WINDOW);
+    assertEquals(1, recycled.samples());
+    assertEquals(0.4, recycled.last());
+  }
+}
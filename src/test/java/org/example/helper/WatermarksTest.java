@@ -0,0 +1,88 @@
+package org.example.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WatermarksTest {
+
+  private static final long LOOKBACK = 300_000;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void windowEndsIngestLagBeforeNow() {
+    Watermarks watermarks = new Watermarks(Duration.ofMinutes(4));
+
+    assertEquals(1_000_000 - 240_000, watermarks.closedUntil(1_000_000));
+  }
+
+  @Test
+  void windowStartsAtLookbackForUnknownScope() {
+    Watermarks watermarks = new Watermarks(Duration.ZERO);
+
+    assertEquals(700_000, watermarks.windowStart("cpu|zone-a", 1_000_000, LOOKBACK));
+  }
+
+  @Test
+  void windowStartsAtOldestWatermarkInScope() {
+    Watermarks watermarks = new Watermarks(Duration.ZERO);
+    watermarks.advance("cpu|zone-a", "1", 900_000, 0.5);
+    watermarks.advance("cpu|zone-a", "2", 800_000, 0.25);
+    watermarks.advance("cpu|zone-b", "3", 750_000, 0.75);
+
+    assertEquals(800_000, watermarks.windowStart("cpu|zone-a", 1_000_000, LOOKBACK));
+  }
+
+  @Test
+  void advanceNeverMovesBackwards() {
+    Watermarks watermarks = new Watermarks(Duration.ZERO);
+    watermarks.advance("cpu|zone-a", "1", 900_000, 0.5);
+    watermarks.advance("cpu|zone-a", "1", 850_000, 0.9);
+
+    assertEquals(900_000, watermarks.endMillis("cpu|zone-a", "1"));
+    assertEquals(Map.of("1", 0.5), watermarks.lastValues("cpu|zone-a"));
+  }
+
+  @Test
+  void seriesOlderThanLookbackArePruned() {
+    Watermarks watermarks = new Watermarks(Duration.ZERO);
+    watermarks.advance("cpu|zone-a", "deleted", 600_000, 0.5);
+    watermarks.advance("cpu|zone-a", "live", 950_000, 0.25);
+
+    assertEquals(950_000, watermarks.windowStart("cpu|zone-a", 1_000_000, LOOKBACK));
+    assertEquals(Long.MIN_VALUE, watermarks.endMillis("cpu|zone-a", "deleted"));
+    assertEquals(Map.of("live", 0.25), watermarks.lastValues("cpu|zone-a"));
+  }
+
+  @Test
+  void detachedCopyKeepsLagButNotSeries() {
+    Watermarks watermarks = new Watermarks(Duration.ofMinutes(4));
+    watermarks.advance("cpu|zone-a", "1", 900_000, 0.5);
+    Watermarks detached = watermarks.detached();
+    detached.advance("cpu|zone-a", "2", 950_000, 0.25);
+
+    assertEquals(1_000_000 - 240_000, detached.closedUntil(1_000_000));
+    assertEquals(Long.MIN_VALUE, detached.endMillis("cpu|zone-a", "1"));
+    assertEquals(Map.of("1", 0.5), watermarks.lastValues("cpu|zone-a"));
+  }
+
+  @Test
+  void saveAndLoadRoundTrip() throws Exception {
+    Path file = directory.resolve("watermarks.properties");
+    Watermarks saved = new Watermarks(Duration.ZERO);
+    saved.advance("cpu|{zone=a}", "{instance_id=1}/{}", 900_000, 0.5);
+    saved.save(file);
+
+    Watermarks loaded = new Watermarks(Duration.ZERO);
+    loaded.load(file);
+
+    assertEquals(900_000, loaded.endMillis("cpu|{zone=a}", "{instance_id=1}/{}"));
+    assertEquals(Map.of("{instance_id=1}/{}", 0.5), loaded.lastValues("cpu|{zone=a}"));
+  }
+}